@@ -88,6 +88,20 @@ public class AppIconLoader {
         task.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR, info);
     }
 
+    /**
+     * Start uploading the icon bitmap to the GPU. The render thread does it
+     * in background, so the first frame which draws the icon does not have
+     * to. Can be called from any thread and is cheap if already uploaded.
+     */
+    protected static void prepareToDraw(Drawable icon) {
+        if (icon instanceof BitmapDrawable) {
+            final Bitmap bitmap = ((BitmapDrawable) icon).getBitmap();
+            if (bitmap != null && !bitmap.isRecycled()) {
+                bitmap.prepareToDraw();
+            }
+        }
+    }
+
     /**
      * AsyncTask loader for the app icon.
      */
@@ -112,12 +126,14 @@ public class AppIconLoader {
 
         @Override
         protected Drawable doInBackground(ActivityInfo... params) {
-            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND + 1);
+            Process.setThreadPriority(LoaderPriority.getAssetPriority());
             if (isCancelled() || rContext == null) {
                 return null;
             }
             // Load and return bitmap
-            return getAppIcon(params[0], rContext.get(), mIconsHandler);
+            final Drawable icon = getAppIcon(params[0], rContext.get(), mIconsHandler);
+            prepareToDraw(icon);
+            return icon;
         }
 
         @Override
@@ -18,7 +18,6 @@
 
 package com.android.systemui.slimrecent;
 
-import android.content.ContentResolver;
 import android.content.Context;
 import android.content.BroadcastReceiver;
 import android.content.Intent;
@@ -26,8 +25,6 @@ import android.content.IntentFilter;
 import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
 import android.net.Uri;
-import android.os.UserHandle;
-import android.provider.Settings;
 import android.util.LruCache;
 
 import java.util.ArrayList;
@@ -105,29 +102,7 @@ public class CacheController {
      * Remove favorite if current app was uninstalled.
      */
     private void mayBeRemoveFavoriteEntry(String packageName) {
-        ContentResolver resolver = mContext.getContentResolver();
-        final String favorites = Settings.System.getStringForUser(
-                    resolver, Settings.System.RECENT_PANEL_FAVORITES,
-                    UserHandle.USER_CURRENT);
-        String entryToSave = "";
-
-        if (favorites == null || favorites != null && favorites.isEmpty()) {
-            return;
-        }
-        for (String favorite : favorites.split("\\|")) {
-            if (favorite.toLowerCase().contains(packageName.toLowerCase())) {
-                continue;
-            }
-            entryToSave += favorite + "|";
-        }
-        if (!entryToSave.isEmpty()) {
-            entryToSave = entryToSave.substring(0, entryToSave.length() - 1);
-        }
-
-        Settings.System.putStringForUser(
-                resolver, Settings.System.RECENT_PANEL_FAVORITES,
-                entryToSave,
-                UserHandle.USER_CURRENT);
+        FavoritesController.getInstance(mContext).removePackage(packageName);
     }
 
     /**
@@ -0,0 +1,489 @@
+/*
+ * Copyright (C) 2026 Android Ice Cold Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.systemui.slimrecent;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.content.res.TypedArray;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.PorterDuff;
+import android.graphics.Rect;
+import android.graphics.Typeface;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import android.os.Bundle;
+import android.text.Layout;
+import android.text.PrecomputedText;
+import android.text.StaticLayout;
+import android.text.TextDirectionHeuristic;
+import android.text.TextDirectionHeuristics;
+import android.text.TextPaint;
+import android.text.TextUtils;
+import android.util.AttributeSet;
+import android.util.SparseArray;
+import android.view.MotionEvent;
+import android.view.View;
+import android.view.accessibility.AccessibilityNodeInfo;
+
+import androidx.core.view.ViewCompat;
+import androidx.core.view.accessibility.AccessibilityNodeInfoCompat;
+import androidx.customview.widget.ExploreByTouchHelper;
+
+import com.android.systemui.R;
+
+import java.util.List;
+
+/**
+ * Flattened card header. Draws app icon, favorite star, app name and
+ * the expand glyph itself instead of using a child view for each.
+ *
+ * Geometry is computed once per size change. Setting a new icon,
+ * star or glyph state only invalidates, a new title only relayouts
+ * the text. Touches are handled by the card, which can ask us if a
+ * point is on the icon or on the expand glyph.
+ *
+ * Accessibility services see the icon, the favorite star and the
+ * expand glyph as virtual views. Their actions go to the ActionListener.
+ */
+public class CardHeaderView extends View {
+
+    private static final int MAX_TITLE_LINES = 2;
+
+    // Virtual view ids.
+    private static final int VIEW_ICON     = 0;
+    private static final int VIEW_FAVORITE = 1;
+    private static final int VIEW_EXPAND   = 2;
+
+    /**
+     * Actions on the parts we draw, requested by accessibility services.
+     */
+    public interface ActionListener {
+        void onIconClick();
+        void onFavoriteClick();
+        void onExpandClick();
+    }
+
+    private final TextPaint mTitlePaint = new TextPaint(TextPaint.ANTI_ALIAS_FLAG);
+    private final int mIconPadding;
+    private final int mTitlePadding;
+    private final int mExpandPadding;
+    private final int mFavoriteSize;
+    private final int mFavoriteOffset;
+
+    private final Rect mIconBounds = new Rect();
+    private final Rect mFavoriteBounds = new Rect();
+    private final Rect mExpandBounds = new Rect();
+    private final Rect mTitleBounds = new Rect();
+    private final int[] mLocation = new int[2];
+
+    private Drawable mIcon;
+    private final Drawable mFavorite;
+    private Drawable mExpand;
+    private int mExpandResId;
+    // Mutated expand glyphs by resource id. Cards switch between a few of them.
+    private final SparseArray<Drawable> mExpandDrawables = new SparseArray<>();
+    private CharSequence mTitle;
+    private StaticLayout mTitleLayout;
+
+    private boolean mContentVisible = true;
+    private boolean mFavoriteVisible;
+    private boolean mExpandVisible = true;
+    private float mExpandRotation;
+
+    private final AccessibilityHelper mAccessibilityHelper;
+    private ActionListener mActionListener;
+
+    public CardHeaderView(Context context) {
+        this(context, null);
+    }
+
+    public CardHeaderView(Context context, AttributeSet attrs) {
+        this(context, attrs, 0);
+    }
+
+    public CardHeaderView(Context context, AttributeSet attrs, int defStyle) {
+        super(context, attrs, defStyle);
+        final Resources res = context.getResources();
+        mIconPadding = res.getDimensionPixelSize(R.dimen.recent_app_icon_padding);
+        mTitlePadding = res.getDimensionPixelSize(R.dimen.recent_app_name_padding);
+        mExpandPadding = res.getDimensionPixelSize(R.dimen.recent_expand_button_padding);
+        mFavoriteSize = res.getDimensionPixelSize(R.dimen.recent_favorite_icon_size);
+        // Same overlap as the card_header_favorite_icon style.
+        mFavoriteOffset = (int) (2 * res.getDisplayMetrics().density);
+
+        mTitlePaint.setTextSize(res.getDimension(R.dimen.recent_flat_card_text_size));
+        mTitlePaint.setTypeface(Typeface.create(Typeface.DEFAULT, Typeface.BOLD));
+        // Until the card tells us its color, draw like a TextView would.
+        final TypedArray a = context.obtainStyledAttributes(
+                new int[] { android.R.attr.textColorPrimary });
+        mTitlePaint.setColor(a.getColor(0, 0xff000000));
+        a.recycle();
+
+        mFavorite = context.getDrawable(R.drawable.ic_recent_favorite);
+        mExpandResId = R.drawable.ic_expand;
+        mExpand = context.getDrawable(mExpandResId).mutate();
+        mExpandDrawables.put(mExpandResId, mExpand);
+
+        mAccessibilityHelper = new AccessibilityHelper(this);
+        ViewCompat.setAccessibilityDelegate(this, mAccessibilityHelper);
+    }
+
+    public void setActionListener(ActionListener listener) {
+        mActionListener = listener;
+    }
+
+    public void setIcon(Drawable icon) {
+        if (mIcon != icon) {
+            mIcon = icon;
+            if (mIcon != null) {
+                mIcon.setBounds(mIconBounds);
+            }
+            invalidate();
+        }
+    }
+
+    public void setTitle(CharSequence title) {
+        if (!TextUtils.equals(mTitle, title)) {
+            mTitle = title;
+            updateTitleLayout();
+            invalidate();
+            mAccessibilityHelper.invalidateVirtualView(VIEW_ICON);
+        }
+    }
+
+    /**
+     * Parameters a title must be precomputed with to skip measuring it here.
+     */
+    public PrecomputedText.Params getTitleParams() {
+        return new PrecomputedText.Params.Builder(mTitlePaint)
+                .setBreakStrategy(Layout.BREAK_STRATEGY_SIMPLE)
+                .setHyphenationFrequency(Layout.HYPHENATION_FREQUENCY_NONE)
+                .setTextDirection(getTitleDirection())
+                .build();
+    }
+
+    public void setTitleColor(int color) {
+        mTitlePaint.setColor(color);
+        invalidate();
+    }
+
+    public void setFavoriteVisible(boolean visible) {
+        if (mFavoriteVisible != visible) {
+            mFavoriteVisible = visible;
+            invalidate();
+            mAccessibilityHelper.invalidateVirtualView(VIEW_FAVORITE);
+        }
+    }
+
+    public void setExpandDrawable(int resId) {
+        if (mExpandResId == resId) {
+            return;
+        }
+        Drawable expand = mExpandDrawables.get(resId);
+        if (expand == null) {
+            expand = getContext().getDrawable(resId).mutate();
+            expand.setColorFilter(mTitlePaint.getColor(), PorterDuff.Mode.MULTIPLY);
+            mExpandDrawables.put(resId, expand);
+        }
+        mExpandResId = resId;
+        mExpand = expand;
+        updateGeometry();
+        invalidate();
+        mAccessibilityHelper.invalidateVirtualView(VIEW_EXPAND);
+    }
+
+    public void setExpandColor(int color) {
+        for (int i = 0; i < mExpandDrawables.size(); i++) {
+            mExpandDrawables.valueAt(i).setColorFilter(color, PorterDuff.Mode.MULTIPLY);
+        }
+        invalidate();
+    }
+
+    public void setExpandVisible(boolean visible) {
+        if (mExpandVisible != visible) {
+            mExpandVisible = visible;
+            updateGeometry();
+            invalidate();
+        }
+    }
+
+    /**
+     * Rotation of the expand glyph in degrees. Used as well by animators.
+     */
+    public void setExpandRotation(float rotation) {
+        final boolean wasExpanded = isExpanded();
+        mExpandRotation = rotation;
+        invalidate();
+        if (wasExpanded != isExpanded()) {
+            mAccessibilityHelper.invalidateVirtualView(VIEW_EXPAND);
+        }
+    }
+
+    // The card turns the glyph while it is expanded.
+    private boolean isExpanded() {
+        return mExpandRotation != 0;
+    }
+
+    public float getExpandRotation() {
+        return mExpandRotation;
+    }
+
+    /**
+     * Show or hide everything we draw, e.g. while the card options are shown.
+     */
+    public void setContentVisible(boolean visible) {
+        if (mContentVisible != visible) {
+            mContentVisible = visible;
+            invalidate();
+            mAccessibilityHelper.invalidateRoot();
+        }
+    }
+
+    public boolean isOnIcon(int rawX, int rawY) {
+        return mContentVisible && isOn(mIconBounds, rawX, rawY);
+    }
+
+    public boolean isOnExpand(int rawX, int rawY) {
+        return mContentVisible && mExpandVisible && isOn(mExpandBounds, rawX, rawY);
+    }
+
+    private boolean isOn(Rect bounds, int rawX, int rawY) {
+        getLocationOnScreen(mLocation);
+        return bounds.contains(rawX - mLocation[0], rawY - mLocation[1]);
+    }
+
+    @Override
+    protected boolean dispatchHoverEvent(MotionEvent event) {
+        return mAccessibilityHelper.dispatchHoverEvent(event) || super.dispatchHoverEvent(event);
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        updateGeometry();
+    }
+
+    @Override
+    public void onRtlPropertiesChanged(int layoutDirection) {
+        super.onRtlPropertiesChanged(layoutDirection);
+        updateGeometry();
+    }
+
+    private void updateGeometry() {
+        final int width = getWidth();
+        final int height = getHeight();
+        if (width == 0 || height == 0) {
+            return;
+        }
+        final boolean rtl = getLayoutDirection() == LAYOUT_DIRECTION_RTL;
+
+        // Square icon at the start.
+        setMirrored(mIconBounds, 0, 0, height, height, width, rtl);
+        mIconBounds.inset(mIconPadding, mIconPadding);
+        if (mIcon != null) {
+            mIcon.setBounds(mIconBounds);
+        }
+
+        // Favorite star on the top end corner of the icon.
+        final int favoriteEnd = height + mFavoriteOffset;
+        setMirrored(mFavoriteBounds, favoriteEnd - mFavoriteSize, -mFavoriteOffset,
+                favoriteEnd, mFavoriteSize - mFavoriteOffset, width, rtl);
+        mFavorite.setBounds(mFavoriteBounds);
+
+        // Expand glyph centered at the end.
+        int expandWidth = 0;
+        if (mExpandVisible) {
+            expandWidth = mExpand.getIntrinsicWidth() + 2 * mExpandPadding;
+            final int expandHeight = mExpand.getIntrinsicHeight();
+            final int top = (height - expandHeight) / 2;
+            setMirrored(mExpandBounds, width - expandWidth + mExpandPadding, top,
+                    width - mExpandPadding, top + expandHeight, width, rtl);
+            mExpand.setBounds(mExpandBounds);
+        } else {
+            mExpandBounds.setEmpty();
+        }
+
+        // Title takes what is left.
+        setMirrored(mTitleBounds, height + mTitlePadding, mTitlePadding,
+                width - expandWidth - mTitlePadding, height - mTitlePadding, width, rtl);
+        updateTitleLayout();
+        mAccessibilityHelper.invalidateRoot();
+    }
+
+    private static void setMirrored(Rect rect, int left, int top, int right, int bottom,
+            int width, boolean rtl) {
+        if (rtl) {
+            rect.set(width - right, top, width - left, bottom);
+        } else {
+            rect.set(left, top, right, bottom);
+        }
+    }
+
+    private void updateTitleLayout() {
+        final int titleWidth = mTitleBounds.width();
+        if (mTitle == null || titleWidth <= 0) {
+            mTitleLayout = null;
+            return;
+        }
+        mTitleLayout = StaticLayout.Builder.obtain(mTitle, 0, mTitle.length(),
+                mTitlePaint, titleWidth)
+                .setAlignment(Layout.Alignment.ALIGN_NORMAL)
+                .setBreakStrategy(Layout.BREAK_STRATEGY_SIMPLE)
+                .setHyphenationFrequency(Layout.HYPHENATION_FREQUENCY_NONE)
+                .setTextDirection(getTitleDirection())
+                .setEllipsize(TextUtils.TruncateAt.END)
+                .setMaxLines(MAX_TITLE_LINES)
+                .build();
+    }
+
+    private TextDirectionHeuristic getTitleDirection() {
+        return getLayoutDirection() == LAYOUT_DIRECTION_RTL
+                ? TextDirectionHeuristics.FIRSTSTRONG_RTL
+                : TextDirectionHeuristics.FIRSTSTRONG_LTR;
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        if (!mContentVisible) {
+            return;
+        }
+        if (mIcon != null && !isRecycled(mIcon)) {
+            mIcon.draw(canvas);
+        }
+        if (mFavoriteVisible) {
+            mFavorite.draw(canvas);
+        }
+        if (mTitleLayout != null) {
+            canvas.save();
+            canvas.translate(mTitleBounds.left,
+                    mTitleBounds.top + (mTitleBounds.height() - mTitleLayout.getHeight()) / 2);
+            mTitleLayout.draw(canvas);
+            canvas.restore();
+        }
+        if (mExpandVisible) {
+            canvas.save();
+            canvas.rotate(mExpandRotation,
+                    mExpandBounds.exactCenterX(), mExpandBounds.exactCenterY());
+            mExpand.draw(canvas);
+            canvas.restore();
+        }
+    }
+
+    // Same safety net as RecentImageView.
+    private static boolean isRecycled(Drawable drawable) {
+        if (drawable instanceof BitmapDrawable) {
+            final Bitmap bitmap = ((BitmapDrawable) drawable).getBitmap();
+            return bitmap != null && bitmap.isRecycled();
+        }
+        return false;
+    }
+
+    private class AccessibilityHelper extends ExploreByTouchHelper {
+
+        AccessibilityHelper(View host) {
+            super(host);
+        }
+
+        @Override
+        protected int getVirtualViewAt(float x, float y) {
+            if (!mContentVisible) {
+                return INVALID_ID;
+            }
+            // The star lies on the icon, so it goes first.
+            if (mFavoriteVisible && mFavoriteBounds.contains((int) x, (int) y)) {
+                return VIEW_FAVORITE;
+            } else if (mIconBounds.contains((int) x, (int) y)) {
+                return VIEW_ICON;
+            } else if (mExpandVisible && mExpandBounds.contains((int) x, (int) y)) {
+                return VIEW_EXPAND;
+            }
+            return INVALID_ID;
+        }
+
+        @Override
+        protected void getVisibleVirtualViews(List<Integer> virtualViewIds) {
+            if (!mContentVisible) {
+                return;
+            }
+            virtualViewIds.add(VIEW_ICON);
+            virtualViewIds.add(VIEW_FAVORITE);
+            if (mExpandVisible) {
+                virtualViewIds.add(VIEW_EXPAND);
+            }
+        }
+
+        @Override
+        protected void onPopulateNodeForVirtualView(int virtualViewId,
+                AccessibilityNodeInfoCompat node) {
+            switch (virtualViewId) {
+                case VIEW_ICON:
+                    node.setContentDescription(mTitle != null ? mTitle.toString() : "");
+                    node.setBoundsInParent(mIconBounds);
+                    node.addAction(AccessibilityNodeInfoCompat.ACTION_CLICK);
+                    break;
+                case VIEW_FAVORITE:
+                    node.setContentDescription(
+                            getContext().getString(R.string.slim_recents_favorite));
+                    node.setCheckable(true);
+                    node.setChecked(mFavoriteVisible);
+                    node.setBoundsInParent(mFavoriteBounds);
+                    node.addAction(AccessibilityNodeInfoCompat.ACTION_CLICK);
+                    break;
+                case VIEW_EXPAND:
+                    node.setContentDescription(getContext().getString(getExpandDescription()));
+                    node.setBoundsInParent(mExpandBounds);
+                    node.addAction(AccessibilityNodeInfoCompat.ACTION_CLICK);
+                    break;
+                default:
+                    // Never reached, but the node needs bounds.
+                    node.setContentDescription("");
+                    node.setBoundsInParent(mIconBounds);
+                    break;
+            }
+        }
+
+        @Override
+        protected boolean onPerformActionForVirtualView(int virtualViewId, int action,
+                Bundle arguments) {
+            if (action != AccessibilityNodeInfo.ACTION_CLICK || mActionListener == null) {
+                return false;
+            }
+            switch (virtualViewId) {
+                case VIEW_ICON:
+                    mActionListener.onIconClick();
+                    return true;
+                case VIEW_FAVORITE:
+                    mActionListener.onFavoriteClick();
+                    return true;
+                case VIEW_EXPAND:
+                    mActionListener.onExpandClick();
+                    return true;
+            }
+            return false;
+        }
+
+        private int getExpandDescription() {
+            if (mExpandResId == R.drawable.slim_recents_lock_to_app_pin) {
+                return R.string.slim_recents_pin_app;
+            } else if (mExpandResId == R.drawable.ic_options) {
+                return R.string.slim_recents_options;
+            }
+            return isExpanded() ? R.string.slim_recents_collapse : R.string.slim_recents_expand;
+        }
+    }
+}
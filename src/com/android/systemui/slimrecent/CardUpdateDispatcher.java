@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2026 Android Ice Cold Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.systemui.slimrecent;
+
+import android.util.ArrayMap;
+import android.view.Choreographer;
+
+import androidx.recyclerview.widget.RecyclerView;
+
+import java.util.ArrayList;
+
+import com.android.systemui.slimrecent.ExpandableCardAdapter.ExpandableCard;
+
+/**
+ * Collects card inserts and changes and applies them to the adapter
+ * once per frame.
+ *
+ * Cards, icons and screenshots arrive one by one from different loaders
+ * while the panel animates in. Instead of notifying the adapter for each
+ * of them we apply them together on the next frame and bind at most
+ * MAX_UPDATES_PER_FRAME cards per frame. The rest follows on the next
+ * frames. Can be called from any thread.
+ */
+public class CardUpdateDispatcher {
+
+    private final static String TAG = "RecentCardUpdateDispatcher";
+
+    // Inserted or changed cards we bind at most in one frame.
+    static final int MAX_UPDATES_PER_FRAME = 4;
+
+    /**
+     * Runs the callback on the next frame. The Choreographer, or a fake in tests.
+     */
+    interface FrameScheduler {
+        void postFrameCallback(Choreographer.FrameCallback callback);
+    }
+
+    private final RecyclerView mRecyclerView;
+    private final FrameScheduler mFrameScheduler;
+    private ExpandableCardAdapter mAdapter;
+
+    // Guarded by this.
+    private final ArrayList<ExpandableCard> mPendingInserts = new ArrayList<>();
+    // Pending cards with their combined ExpandableCardAdapter change payloads.
+    private final ArrayMap<ExpandableCard, Integer> mPendingChanges = new ArrayMap<>();
+    private boolean mFrameScheduled;
+
+    private final Choreographer.FrameCallback mFrameCallback =
+            new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            applyUpdates();
+        }
+    };
+
+    /**
+     * Must be created on the main thread.
+     */
+    public CardUpdateDispatcher(RecyclerView recyclerView) {
+        this(recyclerView, Choreographer.getInstance()::postFrameCallback);
+    }
+
+    CardUpdateDispatcher(RecyclerView recyclerView, FrameScheduler frameScheduler) {
+        mRecyclerView = recyclerView;
+        mFrameScheduler = frameScheduler;
+    }
+
+    /**
+     * Set the adapter we apply the updates to. Pending updates are dropped.
+     */
+    public synchronized void setAdapter(ExpandableCardAdapter adapter) {
+        mAdapter = adapter;
+        clear();
+    }
+
+    public synchronized void insert(ExpandableCard card) {
+        mPendingInserts.add(card);
+        scheduleFrame();
+    }
+
+    /**
+     * Rebind the given parts of the card, see ExpandableCardAdapter.CHANGE_*.
+     */
+    public synchronized void change(ExpandableCard card, int changes) {
+        if (mPendingInserts.contains(card)) {
+            // Not bound yet, it picks up the change on insert.
+            return;
+        }
+        final Integer pending = mPendingChanges.get(card);
+        mPendingChanges.put(card, pending != null ? pending | changes : changes);
+        scheduleFrame();
+    }
+
+    /**
+     * Drop pending inserts, e.g. of an outdated load.
+     */
+    public synchronized void clearInserts() {
+        mPendingInserts.clear();
+    }
+
+    /**
+     * Drop all pending updates, e.g. if the adapter was cleared.
+     */
+    public synchronized void clear() {
+        mPendingInserts.clear();
+        mPendingChanges.clear();
+    }
+
+    /**
+     * Amount of cards which are not yet in the adapter.
+     */
+    public synchronized int getPendingInsertCount() {
+        return mPendingInserts.size();
+    }
+
+    private void scheduleFrame() {
+        if (!mFrameScheduled) {
+            mFrameScheduled = true;
+            mFrameScheduler.postFrameCallback(mFrameCallback);
+        }
+    }
+
+    private synchronized void applyUpdates() {
+        mFrameScheduled = false;
+        if (mAdapter == null) {
+            clear();
+            return;
+        }
+        if (mRecyclerView.isComputingLayout()) {
+            // Try again next frame.
+            scheduleFrame();
+            return;
+        }
+
+        int budget = MAX_UPDATES_PER_FRAME;
+
+        // Inserts first, they keep the loader order.
+        final int inserts = Math.min(budget, mPendingInserts.size());
+        if (inserts > 0) {
+            mAdapter.addCards(mPendingInserts.subList(0, inserts));
+            mPendingInserts.subList(0, inserts).clear();
+            budget -= inserts;
+        }
+
+        for (int i = mPendingChanges.size() - 1; i >= 0 && budget > 0; i--) {
+            final int pos = mAdapter.indexOf(mPendingChanges.keyAt(i));
+            final Integer changes = mPendingChanges.removeAt(i);
+            if (pos >= 0) {
+                // Cards which were removed meanwhile are skipped.
+                mAdapter.notifyItemChanged(pos, changes);
+                budget--;
+            }
+        }
+
+        if (!mPendingInserts.isEmpty() || !mPendingChanges.isEmpty()) {
+            scheduleFrame();
+        }
+    }
+}
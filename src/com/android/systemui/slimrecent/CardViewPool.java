@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2026 Android Ice Cold Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.systemui.slimrecent;
+
+import android.content.res.Resources;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.view.ViewGroup;
+import android.widget.FrameLayout;
+
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.android.systemui.R;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * Pool of card views for the recents list which we fill in background.
+ *
+ * Inflating a card is the most expensive part of the first panel open.
+ * After boot and after the adapter was rebuilt we inflate as many cards
+ * as fit on the screen in background. The first open then only binds.
+ * Main thread inflations are visible in systrace as
+ * ExpandableCardAdapter.TRACE_INFLATE_CARD.
+ *
+ * Cards are inflated one after another on an own thread into a detached
+ * parent, so the inflater never touches the shown list. The pool itself
+ * is only changed on the main thread.
+ */
+public class CardViewPool extends RecyclerView.RecycledViewPool {
+
+    private final static String TAG = "RecentCardViewPool";
+
+    private static final int CARD_VIEW_TYPE = 0;
+
+    // Upper bound of cards we keep, even on very high screens.
+    private static final int MAX_CARDS = 12;
+
+    private static final Executor sInflaterExecutor = Executors.newSingleThreadExecutor(
+            LoaderPriority.newThreadFactory("SlimRecentsInflater"));
+
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final int mCardCount;
+
+    // Increased on every warm up. Outdated inflations are stopped and dropped.
+    private volatile int mGeneration;
+
+    public CardViewPool(Resources res) {
+        final int cardHeight = res.getDimensionPixelSize(R.dimen.recent_card_height)
+                + res.getDimensionPixelSize(R.dimen.recent_card_layout_marginTop)
+                + res.getDimensionPixelSize(R.dimen.recent_card_layout_marginBottom);
+        // Collapsed cards which fit on the screen plus one partly visible.
+        mCardCount = Math.min(
+                res.getDisplayMetrics().heightPixels / cardHeight + 1, MAX_CARDS);
+        setMaxRecycledViews(CARD_VIEW_TYPE, mCardCount);
+    }
+
+    /**
+     * Number of cards a warm up fills the pool with.
+     */
+    int getCardCount() {
+        return mCardCount;
+    }
+
+    /**
+     * Inflate cards for the adapter in background. The RecyclerView clears
+     * the pool when the adapter changes, so call it after setAdapter.
+     * Must be called on the main thread.
+     */
+    public void warmUp(final ExpandableCardAdapter adapter, ViewGroup parent) {
+        final int generation = ++mGeneration;
+        final int missing = mCardCount - getRecycledViewCount(CARD_VIEW_TYPE);
+        if (missing <= 0) {
+            return;
+        }
+        // Only used by the inflater thread to create layout params. The RecyclerView
+        // converts them to its own ones when it takes the card out of the pool.
+        final ViewGroup detachedParent = new FrameLayout(parent.getContext());
+        sInflaterExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < missing && generation == mGeneration; i++) {
+                    final ExpandableCardAdapter.ViewHolder holder;
+                    try {
+                        holder = adapter.createViewHolder(detachedParent, CARD_VIEW_TYPE);
+                    } catch (RuntimeException e) {
+                        // Not fatal, the card is inflated on demand then.
+                        Log.w(TAG, "Unable to inflate card in background", e);
+                        return;
+                    }
+                    mHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (generation == mGeneration) {
+                                putRecycledView(holder);
+                            }
+                        }
+                    });
+                }
+            }
+        });
+    }
+}
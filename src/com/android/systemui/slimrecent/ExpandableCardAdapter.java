@@ -17,20 +17,30 @@
  */
 package com.android.systemui.slimrecent;
 
+import android.animation.Animator;
+import android.animation.AnimatorListenerAdapter;
+import android.animation.ObjectAnimator;
+import android.animation.ValueAnimator;
 import android.content.Context;
 import android.content.res.ColorStateList;
 import android.graphics.Bitmap;
 import android.graphics.drawable.Drawable;
 import android.graphics.PorterDuff;
+import android.graphics.Rect;
 import android.graphics.Typeface;
+import android.os.Looper;
+import android.os.Trace;
+import android.text.PrecomputedText;
+import android.text.TextUtils;
+import android.util.SparseArray;
 import android.transition.AutoTransition;
-import android.transition.Fade;
 import android.transition.Transition;
-import android.transition.TransitionManager;
+import android.view.Choreographer;
 import android.view.LayoutInflater;
 import android.view.MotionEvent;
 import android.view.View;
 import android.view.ViewGroup;
+import android.view.ViewTreeObserver;
 import android.view.animation.AlphaAnimation;
 import android.view.animation.Animation;
 import android.view.animation.AnimationUtils;
@@ -40,55 +50,153 @@ import android.widget.LinearLayout;
 import android.widget.TextView;
 
 import androidx.cardview.widget.CardView;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
 import java.util.ArrayList;
+import java.util.List;
 
 import com.android.systemui.R;
 
 public class ExpandableCardAdapter extends RecyclerView.Adapter<ExpandableCardAdapter.ViewHolder> {
 
+    // Change payloads. Pass them to notifyItemChanged to rebind only the
+    // affected views of a card. They can be combined.
+    public static final int CHANGE_ICON = 1 << 0;
+    public static final int CHANGE_SCREENSHOT = 1 << 1;
+    public static final int CHANGE_FAVORITE = 1 << 2;
+    public static final int CHANGE_COLOR = 1 << 3;
+    public static final int CHANGE_EXPANDED = 1 << 4;
+    public static final int CHANGE_TITLE = 1 << 5;
+
+    public static final int CHANGE_ALL = CHANGE_ICON | CHANGE_SCREENSHOT | CHANGE_FAVORITE
+            | CHANGE_COLOR | CHANGE_EXPANDED | CHANGE_TITLE;
+
+    static final String TRACE_INFLATE_CARD = "SlimRecents#inflateCard";
+
     private Context mContext;
 
     private boolean mFastMode;
 
+    // Draw the card header with a single CardHeaderView, see card_flat.xml.
+    private final boolean mFlatCards;
+    private Drawable mDefaultIcon;
+
+    // Text parameters of the card titles, taken from the first created card.
+    // Read by the loader thread to measure titles before they are bound.
+    private volatile PrecomputedText.Params mTitleParams;
+
+    // Laid out card heights per card width, {collapsed, expanded}. The expand
+    // animation needs the target height before the card is laid out again.
+    private final SparseArray<int[]> mCardHeights = new SparseArray<>();
+
     private ArrayList<ExpandableCard> mCards = new ArrayList<>();
 
+    // Holders with a running expand animation or views it still has to reset.
+    private final ArrayList<ViewHolder> mExpandingHolders = new ArrayList<>();
+
     public ExpandableCardAdapter(Context context, boolean fastMode) {
         mContext = context;
         mFastMode = fastMode;
+        mFlatCards = context.getResources().getBoolean(R.bool.config_slimRecentFlatCards);
+        // Cards keep their views when others are removed or moved.
+        setHasStableIds(true);
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return mCards.get(position).getStableId();
     }
 
     @Override
     public ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
-        return new ViewHolder(LayoutInflater.from(mContext).inflate(R.layout.card, parent, false));
+        // Cards are as well inflated in background to warm up the CardViewPool.
+        // LayoutInflater instances are not thread safe, so use an own one there.
+        LayoutInflater inflater = LayoutInflater.from(mContext);
+        if (Looper.myLooper() != Looper.getMainLooper()) {
+            inflater = inflater.cloneInContext(mContext);
+        }
+        Trace.beginSection(TRACE_INFLATE_CARD);
+        try {
+            return new ViewHolder(inflater.inflate(
+                    mFlatCards ? R.layout.card_flat : R.layout.card, parent, false));
+        } finally {
+            Trace.endSection();
+        }
+    }
+
+    @Override
+    public void onViewRecycled(ViewHolder holder) {
+        holder.cancelExpandAnimation();
+        // The card may as well be moved by the animation of another one.
+        for (int i = mExpandingHolders.size() - 1; i >= 0; i--) {
+            final ViewHolder expanding = mExpandingHolders.get(i);
+            if (expanding.isMovingView(holder.itemView)) {
+                expanding.skipExpandAnimation();
+            }
+        }
     }
 
     @Override
     public void onBindViewHolder(final ViewHolder holder, final int position) {
+        bind(holder, position, CHANGE_ALL);
+    }
+
+    @Override
+    public void onBindViewHolder(final ViewHolder holder, final int position,
+            List<Object> payloads) {
+        if (payloads.isEmpty()) {
+            onBindViewHolder(holder, position);
+            return;
+        }
+        int changes = 0;
+        for (Object payload : payloads) {
+            if (!(payload instanceof Integer)) {
+                changes = CHANGE_ALL;
+                break;
+            }
+            changes |= (Integer) payload;
+        }
+        bind(holder, position, changes);
+    }
 
+    private void bind(ViewHolder holder, int position, int changes) {
         ExpandableCard card = mCards.get(position);
-        card.index = position;
         holder.setCard(card);
 
-        boolean screenshotAvailable = canDisplayScreenshot(card);
-
-        holder.screenshot.setVisibility(screenshotAvailable && card.expanded ?
-                View.VISIBLE : View.GONE);
-        holder.expandButton.setRotation(card.expanded ? -180 : 0);
-
-        holder.card.setRadius(card.cornerRadius);
+        if (changes == CHANGE_ALL) {
+            holder.cancelExpandAnimation();
+            holder.card.setRadius(card.cornerRadius);
 
-        if (card.pinAppIcon) {
-            holder.expandButton.setImageResource(R.drawable.slim_recents_lock_to_app_pin);
-        } else if (mFastMode) {
-            holder.expandButton.setImageResource(R.drawable.ic_options);
-        } else if (card.expandVisible) {
-            holder.expandButton.setImageResource(R.drawable.ic_expand);
+            if (card.pinAppIcon) {
+                holder.setExpandImage(R.drawable.slim_recents_lock_to_app_pin);
+            } else if (mFastMode) {
+                holder.setExpandImage(R.drawable.ic_options);
+            } else if (card.expandVisible) {
+                holder.setExpandImage(R.drawable.ic_expand);
+            }
+        }
+        if ((changes & CHANGE_COLOR) != 0) {
+            bindColor(holder, card);
+        }
+        if ((changes & CHANGE_ICON) != 0) {
+            bindIcon(holder, card);
+        }
+        if ((changes & CHANGE_FAVORITE) != 0) {
+            holder.setFavoriteVisible(card.favorite);
         }
-        holder.expandButton.setVisibility(!card.noIcon &&
-                (mFastMode || screenshotAvailable || card.pinAppIcon) ? View.VISIBLE : View.GONE);
+        if ((changes & CHANGE_TITLE) != 0) {
+            // The measured title is outdated if the name was changed meanwhile.
+            holder.setTitle(TextUtils.equals(card.precomputedName, card.appName)
+                    ? card.precomputedName : card.appName);
+        }
+        if ((changes & (CHANGE_SCREENSHOT | CHANGE_EXPANDED)) != 0) {
+            bindScreenshot(holder, card, (changes & CHANGE_SCREENSHOT) != 0);
+        }
+    }
 
+    private void bindColor(ViewHolder holder, ExpandableCard card) {
         if (card.cardBackgroundColor != 0) {
             // we need to override tint list instead of setting cardview background color
             // because some dark themes could change system colors being used by
@@ -103,22 +211,31 @@ public class ExpandableCardAdapter extends RecyclerView.Adapter<ExpandableCardAd
             } else {
                 color = mContext.getColor(R.color.recent_foreground_dark);
             }
-            holder.appName.setTextColor(color);
-            holder.expandButton.setColorFilter(color, PorterDuff.Mode.MULTIPLY);
+            holder.setForegroundColor(color);
             card.textColor = color;
         }
+    }
 
-        if (card.appIcon != null) {
+    private void bindIcon(ViewHolder holder, ExpandableCard card) {
+        if (holder.header != null) {
+            holder.header.setIcon(card.appIcon != null ? card.appIcon : getDefaultIcon());
+        } else if (card.appIcon != null) {
             holder.appIcon.setImageDrawable(card.appIcon);
         } else {
             holder.appIcon.setImageResource(android.R.drawable.sym_def_app_icon);
         }
+    }
 
-        holder.favorite.setVisibility(card.favorite ? View.VISIBLE : View.GONE);
+    private void bindScreenshot(ViewHolder holder, ExpandableCard card, boolean newBitmap) {
+        boolean screenshotAvailable = canDisplayScreenshot(card);
 
-        holder.appName.setText(card.appName);
+        holder.screenshot.setVisibility(screenshotAvailable && card.expanded ?
+                View.VISIBLE : View.GONE);
+        holder.setExpandRotation(card.expanded ? -180 : 0);
+        holder.setExpandVisible(!card.noIcon &&
+                (mFastMode || screenshotAvailable || card.pinAppIcon));
 
-        if (!mFastMode && screenshotAvailable) {
+        if (newBitmap && !mFastMode && screenshotAvailable) {
             holder.screenshot.setImageBitmap(card.screenshot);
         }
     }
@@ -132,14 +249,56 @@ public class ExpandableCardAdapter extends RecyclerView.Adapter<ExpandableCardAd
         notifyItemInserted(mCards.indexOf(card));
     }
 
-    public void removeCard(int pos)  {
-        mCards.remove(pos);
-        notifyItemRemoved(pos);
-        notifyItemRangeChanged(pos, getItemCount());
+    public void addCards(List<ExpandableCard> cards) {
+        final int start = mCards.size();
+        mCards.addAll(cards);
+        notifyItemRangeInserted(start, cards.size());
     }
 
-    public void clearCards() {
+    /**
+     * Replace the cards and notify only inserts, moves and removals.
+     * Cards which are kept as object are not rebound. Their changes
+     * are expected through notifyItemChanged with change payloads.
+     */
+    public void setCards(final List<? extends ExpandableCard> cards) {
+        final DiffUtil.DiffResult result = DiffUtil.calculateDiff(new DiffUtil.Callback() {
+            @Override
+            public int getOldListSize() {
+                return mCards.size();
+            }
+
+            @Override
+            public int getNewListSize() {
+                return cards.size();
+            }
+
+            @Override
+            public boolean areItemsTheSame(int oldPos, int newPos) {
+                return mCards.get(oldPos).getStableId() == cards.get(newPos).getStableId();
+            }
+
+            @Override
+            public boolean areContentsTheSame(int oldPos, int newPos) {
+                return mCards.get(oldPos) == cards.get(newPos);
+            }
+        });
         mCards.clear();
+        mCards.addAll(cards);
+        result.dispatchUpdatesTo(this);
+    }
+
+    public int indexOf(ExpandableCard card) {
+        return mCards.indexOf(card);
+    }
+
+    /**
+     * Rebind the given parts of the card if it is still in the list.
+     */
+    public void notifyCardChanged(ExpandableCard card, int changes) {
+        final int pos = mCards.indexOf(card);
+        if (pos >= 0) {
+            notifyItemChanged(pos, changes);
+        }
     }
 
     public ExpandableCard getCard(int pos) {
@@ -147,7 +306,13 @@ public class ExpandableCardAdapter extends RecyclerView.Adapter<ExpandableCardAd
     }
 
     public void removeCard(ExpandableCard card) {
-        removeCard(mCards.indexOf(card));
+        final int pos = mCards.indexOf(card);
+        if (pos < 0) {
+            return;
+        }
+        mCards.remove(pos);
+        // Views bind the card and not the position, others need no rebind.
+        notifyItemRemoved(pos);
     }
 
     @Override
@@ -155,6 +320,48 @@ public class ExpandableCardAdapter extends RecyclerView.Adapter<ExpandableCardAd
         return mCards.size();
     }
 
+    /**
+     * Measure a card title so binding it does not measure it on the main
+     * thread. Meant for the loader thread. Returns the plain title as long
+     * as no card was created.
+     */
+    public CharSequence precomputeTitle(String title) {
+        final PrecomputedText.Params params = mTitleParams;
+        if (title == null || params == null) {
+            return title;
+        }
+        return PrecomputedText.create(title, params);
+    }
+
+    /**
+     * Forget the measured card heights, e.g. because the scale factor changed.
+     */
+    public void clearCardHeights() {
+        mCardHeights.clear();
+    }
+
+    private void storeCardHeight(int width, int height, boolean expanded) {
+        int[] heights = mCardHeights.get(width);
+        if (heights == null) {
+            heights = new int[2];
+            mCardHeights.put(width, heights);
+        }
+        heights[expanded ? 1 : 0] = height;
+    }
+
+    // 0 if we did not see such a card yet.
+    private int getCardHeight(int width, boolean expanded) {
+        final int[] heights = mCardHeights.get(width);
+        return heights != null ? heights[expanded ? 1 : 0] : 0;
+    }
+
+    private Drawable getDefaultIcon() {
+        if (mDefaultIcon == null) {
+            mDefaultIcon = mContext.getDrawable(android.R.drawable.sym_def_app_icon);
+        }
+        return mDefaultIcon;
+    }
+
     public void setFastMode(boolean fast) {
         mFastMode = fast;
     }
@@ -165,24 +372,104 @@ public class ExpandableCardAdapter extends RecyclerView.Adapter<ExpandableCardAd
         ImageView favorite;
         TextView appName;
         ImageView expandButton;
+        // Only set for flat cards, which have none of the views above but the screenshot.
+        CardHeaderView header;
         CardView card;
         LinearLayout cardContent;
         LinearLayout optionsView;
         ExpandableCard expCard;
 
+        // Option views we inflated once and reuse for every card we bind.
+        private final ArrayList<ImageView> mOptionViews = new ArrayList<>();
+
         private int upX;
         private int upY;
 
+        private ValueAnimator mExpandAnimator;
+        // Other cards the expand animation moves, set until the views are reset.
+        private List<View> mMovedViews;
+
         public ViewHolder(View itemView) {
             super(itemView);
             cardContent = (LinearLayout) itemView.findViewById(R.id.card_content);
+            screenshot = (RecentThumbView) itemView.findViewById(R.id.screenshot);
+            card = (CardView) itemView.findViewById(R.id.card);
+            optionsView = (LinearLayout) itemView.findViewById(R.id.card_options);
+            header = (CardHeaderView) itemView.findViewById(R.id.card_header);
+
+            if (header == null) {
+                initHeaderViews();
+            } else {
+                header.setActionListener(new CardHeaderView.ActionListener() {
+                    @Override
+                    public void onIconClick() {
+                        if (expCard.cardClickListener != null) {
+                            expCard.cardClickListener.onClick(itemView);
+                        }
+                    }
+
+                    @Override
+                    public void onFavoriteClick() {
+                        onAppIconLongClick(itemView);
+                    }
+
+                    @Override
+                    public void onExpandClick() {
+                        ViewHolder.this.onExpandClick(itemView);
+                    }
+                });
+            }
+            if (mTitleParams == null) {
+                mTitleParams = getTitleParams();
+            }
+
+            itemView.setOnTouchListener(new View.OnTouchListener() {
+                @Override
+                public boolean onTouch(View v, MotionEvent event) {
+                    upX = (int) event.getRawX();
+                    upY = (int) event.getRawY();
+                    return false;
+                }
+            });
+            itemView.setOnClickListener(new View.OnClickListener() {
+                @Override
+                public void onClick(View v) {
+                    if (header != null && header.isOnExpand(upX, upY)) {
+                        onExpandClick(v);
+                    } else if (expCard.cardClickListener != null) {
+                        expCard.cardClickListener.onClick(v);
+                    }
+                }
+            });
+            itemView.setOnLongClickListener(new View.OnLongClickListener() {
+                @Override
+                public boolean onLongClick(View v) {
+                    if (header != null && header.isOnIcon(upX, upY)) {
+                        onAppIconLongClick(v);
+                    } else {
+                        showOptions();
+                    }
+                    return true;
+                }
+            });
+
+            itemView.addOnLayoutChangeListener(new View.OnLayoutChangeListener() {
+                @Override
+                public void onLayoutChange(View v, int left, int top, int right, int bottom,
+                        int oldLeft, int oldTop, int oldRight, int oldBottom) {
+                    storeCardHeight(right - left, bottom - top,
+                            screenshot.getVisibility() == View.VISIBLE);
+                }
+            });
+
+            optionsView.setVisibility(View.GONE);
+        }
+
+        private void initHeaderViews() {
             favorite = (ImageView) itemView.findViewById(R.id.favorite_icon);
             appName = (TextView) itemView.findViewById(R.id.app_name);
             appName.setTypeface(
                     Typeface.create(appName.getTypeface(), Typeface.BOLD));
-            screenshot = (RecentThumbView) itemView.findViewById(R.id.screenshot);
-            card = (CardView) itemView.findViewById(R.id.card);
-            optionsView = (LinearLayout) itemView.findViewById(R.id.card_options);
 
             appIcon = (ImageView) itemView.findViewById(R.id.app_icon);
             /*appIcon.setOnClickListener(new View.OnClickListener() {
@@ -196,9 +483,7 @@ public class ExpandableCardAdapter extends RecyclerView.Adapter<ExpandableCardAd
             appIcon.setOnLongClickListener(new View.OnLongClickListener() {
                 @Override
                 public boolean onLongClick(View v) {
-                    if (expCard.appIconLongClickListener != null) {
-                        expCard.appIconLongClickListener.onLongClick(v);
-                    }
+                    onAppIconLongClick(v);
                     return true;
                 }
             });
@@ -207,52 +492,290 @@ public class ExpandableCardAdapter extends RecyclerView.Adapter<ExpandableCardAd
             expandButton.setOnClickListener(new View.OnClickListener() {
                 @Override
                 public void onClick(View v) {
-                    if (expCard.pinAppIcon) {
-                        if (expCard.pinAppListener != null) {
-                            expCard.pinAppListener.onClick(v);
-                        }
-                    } else if (mFastMode) {
-                        showOptions();
-                    } else if (expCard.expandVisible) {
-                        expCard.expanded = !expCard.expanded;
-                        if (expCard.expandListener != null) {
-                            expCard.expandListener.onExpanded(expCard.expanded);
-                        }
-                        Fade trans = new Fade();
-                        trans.setDuration(150);
-                        TransitionManager.beginDelayedTransition(
-                                (ViewGroup) itemView.getParent(), trans);
-                        expandButton.animate().rotation(expCard.expanded ? -180 : 0);
-                        notifyItemChanged(getAdapterPosition());
-                    }
+                    onExpandClick(v);
                 }
             });
+        }
 
-            itemView.setOnTouchListener(new View.OnTouchListener() {
+        private void onAppIconLongClick(View v) {
+            if (expCard.appIconLongClickListener != null) {
+                expCard.appIconLongClickListener.onLongClick(v);
+            }
+        }
+
+        private void onExpandClick(View v) {
+            if (expCard.pinAppIcon) {
+                if (expCard.pinAppListener != null) {
+                    expCard.pinAppListener.onClick(v);
+                }
+            } else if (mFastMode) {
+                showOptions();
+            } else if (expCard.expandVisible) {
+                expCard.expanded = !expCard.expanded;
+                if (expCard.expandListener != null) {
+                    expCard.expandListener.onExpanded(expCard.expanded);
+                }
+                final float rotation = expCard.expanded ? -180 : 0;
+                if (header != null) {
+                    ObjectAnimator.ofFloat(header, "expandRotation", rotation).start();
+                } else {
+                    expandButton.animate().rotation(rotation);
+                }
+                if (expCard.expanded) {
+                    animateExpand();
+                } else {
+                    animateCollapse();
+                }
+            }
+        }
+
+        // The card is laid out expanded once and revealed by its clip bounds.
+        // The item animator moves the other cards and, with reverse layout,
+        // this card in parallel.
+        private void animateExpand() {
+            final ExpandableCard card = expCard;
+            final int from = itemView.getHeight();
+            final int to = getCardHeight(itemView.getWidth(), true);
+            cancelExpandAnimation();
+            notifyCardChanged(card, CHANGE_EXPANDED);
+            if (to > from && itemView.getParent() != null) {
+                startExpandAnimator(from, to, false, new ArrayList<View>());
+                mExpandAnimator.addListener(new AnimatorListenerAdapter() {
+                    @Override
+                    public void onAnimationEnd(Animator animation) {
+                        resetExpandViews();
+                    }
+                });
+            }
+        }
+
+        // The card shrinks by its clip bounds and the cards which follow are
+        // moved on hardware layers. The card is laid out collapsed once at
+        // the end.
+        private void animateCollapse() {
+            final ExpandableCard card = expCard;
+            final int from = itemView.getHeight();
+            final int to = getCardHeight(itemView.getWidth(), false);
+            cancelExpandAnimation();
+            final RecyclerView parent = (RecyclerView) itemView.getParent();
+            if (to <= 0 || to >= from || parent == null) {
+                notifyCardChanged(card, CHANGE_EXPANDED);
+                return;
+            }
+            final boolean reverse = isReverseLayout(parent);
+            final ArrayList<View> moved = new ArrayList<>();
+            for (int i = 0; i < parent.getChildCount(); i++) {
+                final View child = parent.getChildAt(i);
+                if (reverse ? child.getTop() < itemView.getTop()
+                        : child.getTop() > itemView.getTop()) {
+                    moved.add(child);
+                }
+            }
+            startExpandAnimator(from, to, reverse, moved);
+            mExpandAnimator.addListener(new AnimatorListenerAdapter() {
                 @Override
-                public boolean onTouch(View v, MotionEvent event) {
-                    upX = (int) event.getRawX();
-                    upY = (int) event.getRawY();
-                    return false;
+                public void onAnimationEnd(Animator animation) {
+                    // Not from here, the animator may be ended within a layout.
+                    Choreographer.getInstance().postFrameCallback(
+                            new Choreographer.FrameCallback() {
+                        @Override
+                        public void doFrame(long frameTimeNanos) {
+                            if (mMovedViews != moved) {
+                                // Cancelled meanwhile, the views are reset already.
+                                return;
+                            }
+                            notifyCardChanged(card, CHANGE_EXPANDED);
+                            // The item animator takes the translations as current
+                            // position, so it does not move the cards again. Drop
+                            // them once the new layout is done.
+                            parent.getViewTreeObserver().addOnPreDrawListener(
+                                    new ViewTreeObserver.OnPreDrawListener() {
+                                @Override
+                                public boolean onPreDraw() {
+                                    parent.getViewTreeObserver().removeOnPreDrawListener(this);
+                                    if (mMovedViews == moved) {
+                                        resetExpandViews();
+                                    }
+                                    return true;
+                                }
+                            });
+                        }
+                    });
                 }
             });
-            itemView.setOnClickListener(new View.OnClickListener() {
+        }
+
+        // Animate the visible card height from 'from' to 'to' while the card is
+        // laid out with the larger one. Views in 'moved' and, with reverse
+        // layout, the card itself follow the changing edge.
+        private void startExpandAnimator(final int from, final int to,
+                final boolean reverse, final List<View> moved) {
+            final RecyclerView.ItemAnimator itemAnimator =
+                    ((RecyclerView) itemView.getParent()).getItemAnimator();
+            final Rect clip = new Rect();
+            final int laidOut = Math.max(from, to);
+            mMovedViews = moved;
+            mExpandingHolders.add(this);
+            mExpandAnimator = ValueAnimator.ofInt(from, to);
+            if (itemAnimator != null) {
+                mExpandAnimator.setDuration(itemAnimator.getMoveDuration());
+            }
+            mExpandAnimator.addUpdateListener(new ValueAnimator.AnimatorUpdateListener() {
                 @Override
-                public void onClick(View v) {
-                    if (expCard.cardClickListener != null) {
-                        expCard.cardClickListener.onClick(v);
+                public void onAnimationUpdate(ValueAnimator animation) {
+                    final int height = (Integer) animation.getAnimatedValue();
+                    clip.set(0, 0, itemView.getWidth(), height);
+                    itemView.setClipBounds(clip);
+                    final int offset = reverse ? laidOut - height : height - laidOut;
+                    if (reverse) {
+                        itemView.setTranslationY(offset);
+                    }
+                    for (int i = 0; i < moved.size(); i++) {
+                        moved.get(i).setTranslationY(offset);
                     }
                 }
             });
-            itemView.setOnLongClickListener(new View.OnLongClickListener() {
+            mExpandAnimator.addListener(new AnimatorListenerAdapter() {
                 @Override
-                public boolean onLongClick(View v) {
-                    showOptions();
-                    return true;
+                public void onAnimationStart(Animator animation) {
+                    setExpandLayers(moved, View.LAYER_TYPE_HARDWARE);
+                }
+
+                @Override
+                public void onAnimationEnd(Animator animation) {
+                    setExpandLayers(moved, View.LAYER_TYPE_NONE);
+                    mExpandAnimator = null;
                 }
             });
+            mExpandAnimator.start();
+        }
 
-            optionsView.setVisibility(View.GONE);
+        private void setExpandLayers(List<View> moved, int layerType) {
+            itemView.setLayerType(layerType, null);
+            for (int i = 0; i < moved.size(); i++) {
+                moved.get(i).setLayerType(layerType, null);
+            }
+        }
+
+        private boolean isReverseLayout(RecyclerView parent) {
+            final RecyclerView.LayoutManager lm = parent.getLayoutManager();
+            return lm instanceof LinearLayoutManager
+                    && ((LinearLayoutManager) lm).getReverseLayout();
+        }
+
+        /**
+         * Stop a running expand animation and reset the views it changed,
+         * e.g. before the holder gets another card. Notifies nobody, so it
+         * is safe within a bind.
+         */
+        void cancelExpandAnimation() {
+            if (mExpandAnimator != null) {
+                final ValueAnimator animator = mExpandAnimator;
+                mExpandAnimator = null;
+                animator.removeAllListeners();
+                animator.removeAllUpdateListeners();
+                animator.cancel();
+            }
+            if (mMovedViews != null) {
+                resetExpandViews();
+            }
+        }
+
+        /**
+         * Like cancelExpandAnimation, but lay out the card in its current
+         * state with the next frame.
+         */
+        void skipExpandAnimation() {
+            final ExpandableCard card = expCard;
+            cancelExpandAnimation();
+            Choreographer.getInstance().postFrameCallback(new Choreographer.FrameCallback() {
+                @Override
+                public void doFrame(long frameTimeNanos) {
+                    notifyCardChanged(card, CHANGE_EXPANDED);
+                }
+            });
+        }
+
+        boolean isMovingView(View view) {
+            return mMovedViews != null && mMovedViews.contains(view);
+        }
+
+        private void resetExpandViews() {
+            itemView.setClipBounds(null);
+            itemView.setTranslationY(0);
+            itemView.setLayerType(View.LAYER_TYPE_NONE, null);
+            if (mMovedViews != null) {
+                for (int i = 0; i < mMovedViews.size(); i++) {
+                    mMovedViews.get(i).setTranslationY(0);
+                    mMovedViews.get(i).setLayerType(View.LAYER_TYPE_NONE, null);
+                }
+                mMovedViews = null;
+            }
+            mExpandingHolders.remove(this);
+        }
+
+        private PrecomputedText.Params getTitleParams() {
+            return header != null
+                    ? header.getTitleParams() : appName.getTextMetricsParams();
+        }
+
+        void setTitle(CharSequence title) {
+            if (title instanceof PrecomputedText) {
+                final PrecomputedText.Params params = getTitleParams();
+                if (!params.equals(((PrecomputedText) title).getParams())) {
+                    // E.g. the layout direction changed. TextView refuses
+                    // such text, measure it here and fix the next load.
+                    mTitleParams = params;
+                    title = title.toString();
+                }
+            }
+            if (header != null) {
+                header.setTitle(title);
+            } else {
+                appName.setText(title);
+            }
+        }
+
+        void setFavoriteVisible(boolean visible) {
+            if (header != null) {
+                header.setFavoriteVisible(visible);
+            } else {
+                favorite.setVisibility(visible ? View.VISIBLE : View.GONE);
+            }
+        }
+
+        void setForegroundColor(int color) {
+            if (header != null) {
+                header.setTitleColor(color);
+                header.setExpandColor(color);
+            } else {
+                appName.setTextColor(color);
+                expandButton.setColorFilter(color, PorterDuff.Mode.MULTIPLY);
+            }
+        }
+
+        void setExpandImage(int resId) {
+            if (header != null) {
+                header.setExpandDrawable(resId);
+            } else {
+                expandButton.setImageResource(resId);
+            }
+        }
+
+        void setExpandRotation(float rotation) {
+            if (header != null) {
+                header.setExpandRotation(rotation);
+            } else {
+                expandButton.setRotation(rotation);
+            }
+        }
+
+        void setExpandVisible(boolean visible) {
+            if (header != null) {
+                header.setExpandVisible(visible);
+            } else {
+                expandButton.setVisibility(visible ? View.VISIBLE : View.GONE);
+            }
         }
 
         public void setCard(ExpandableCard card) {
@@ -264,14 +787,14 @@ public class ExpandableCardAdapter extends RecyclerView.Adapter<ExpandableCardAd
             for (int i = 0; i < getItemCount(); i++) {
                 mCards.get(i).forceHideOptions();
             }
-            LayoutInflater inflater = LayoutInflater.from(mContext);
+            final List<OptionsItem> options = expCard.getOptions();
             optionsView.removeAllViewsInLayout();
-            for (int i = 0; i < expCard.mOptions.size(); i++) {
-                OptionsItem item = expCard.mOptions.get(i);
-                ImageView option = (ImageView) inflater.inflate(
-                        R.layout.options_item, optionsView, false);
-                item.icon.setColorFilter(expCard.textColor, PorterDuff.Mode.MULTIPLY);
+            for (int i = 0; i < options.size(); i++) {
+                OptionsItem item = options.get(i);
+                ImageView option = getOptionView(i);
                 option.setImageDrawable(item.icon);
+                // Tint the view, the icons share their state with other cards.
+                option.setColorFilter(expCard.textColor, PorterDuff.Mode.MULTIPLY);
                 option.setId(item.id);
                 option.setOnClickListener(new View.OnClickListener() {
                         @Override
@@ -285,10 +808,8 @@ public class ExpandableCardAdapter extends RecyclerView.Adapter<ExpandableCardAd
                             }
                         }
                 });
-                if (item.touchListener != null) {
-                    option.setTag(this);
-                    option.setOnTouchListener(item.touchListener);
-                }
+                option.setTag(item.touchListener != null ? this : null);
+                option.setOnTouchListener(item.touchListener);
                 optionsView.addView(option);
             }
 
@@ -302,6 +823,16 @@ public class ExpandableCardAdapter extends RecyclerView.Adapter<ExpandableCardAd
             cardContentVisibility(false);
         }
 
+        private ImageView getOptionView(int pos) {
+            if (pos < mOptionViews.size()) {
+                return mOptionViews.get(pos);
+            }
+            final ImageView option = (ImageView) LayoutInflater.from(mContext).inflate(
+                    R.layout.options_item, optionsView, false);
+            mOptionViews.add(option);
+            return option;
+        }
+
         public void hideOptions(boolean force) {
             if (force) {
                 optionsView.setVisibility(View.GONE);
@@ -319,6 +850,12 @@ public class ExpandableCardAdapter extends RecyclerView.Adapter<ExpandableCardAd
         }
 
         void cardContentVisibility(boolean show) {
+            if (header != null) {
+                header.setContentVisible(show);
+                setExpandVisible(!expCard.noIcon &&
+                        (mFastMode || canDisplayScreenshot(expCard)));
+                return;
+            }
             appIcon.setVisibility(show ? View.VISIBLE : View.GONE);
             appName.setVisibility(show ? View.VISIBLE : View.GONE);
             favorite.setVisibility(show && expCard.favorite ? View.VISIBLE : View.GONE);
@@ -343,15 +880,21 @@ public class ExpandableCardAdapter extends RecyclerView.Adapter<ExpandableCardAd
     }
 
     public interface HideOptionsListener {
-        void onHideOptions(int index);
+        void onHideOptions(ExpandableCard card);
     }
 
     public static class ExpandableCard {
+        // Ids for cards without task, negative to never clash with task ids.
+        private static long sNextLocalId = -2;
+
         boolean expanded = false;
         String appName;
+        // appName measured by the loader, see precomputeTitle.
+        CharSequence precomputedName;
         Drawable appIcon;
         Bitmap screenshot;
         private ArrayList<OptionsItem> mOptions = new ArrayList<>();
+        private boolean mOptionsCreated;
         int textColor;
         boolean expandVisible = true;
         boolean pinAppIcon = false;
@@ -359,7 +902,7 @@ public class ExpandableCardAdapter extends RecyclerView.Adapter<ExpandableCardAd
         boolean favorite = false;
         Context context;
         String identifier;
-        int index;
+        private final long mLocalId;
         float cornerRadius;
         //View.OnClickListener appIconClickListener;
         View.OnClickListener pinAppListener;
@@ -374,18 +917,47 @@ public class ExpandableCardAdapter extends RecyclerView.Adapter<ExpandableCardAd
         public ExpandableCard(String appName, Drawable appIcon) {
             this.appName = appName;
             this.appIcon = appIcon;
+            synchronized (ExpandableCard.class) {
+                mLocalId = sNextLocalId--;
+            }
+        }
+
+        /**
+         * Id which stays the same while the card moves in the list.
+         */
+        long getStableId() {
+            return persistentTaskId >= 0 ? persistentTaskId : mLocalId;
         }
 
         public void addOption(OptionsItem item) {
             mOptions.add(item);
         }
 
+        /**
+         * Remove all options. They are created again on next request.
+         */
         public void clearOptions() {
             mOptions.clear();
+            mOptionsCreated = false;
+        }
+
+        /**
+         * Called when the options are requested the first time.
+         * Add the options here.
+         */
+        protected void onCreateOptions() {
+        }
+
+        List<OptionsItem> getOptions() {
+            if (!mOptionsCreated) {
+                mOptionsCreated = true;
+                onCreateOptions();
+            }
+            return mOptions;
         }
 
         void forceHideOptions() {
-            hideOptionsListener.onHideOptions(index);
+            hideOptionsListener.onHideOptions(this);
         }
     }
 
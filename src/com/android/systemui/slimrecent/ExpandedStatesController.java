@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2026 Android Ice Cold Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.systemui.slimrecent;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.LruCache;
+
+import com.android.internal.os.BackgroundThread;
+
+import java.util.Map;
+
+/**
+ * Holds the expanded states of the apps, keyed by task identifier.
+ *
+ * Lookups are done from the card loader thread, so we use the
+ * synchronized LruCache which as well bounds the amount of apps we
+ * remember. Changes are written asynchronously to device protected
+ * preferences on save() to survive SystemUI restarts.
+ *
+ * The stored states are read on the background thread. A lookup before
+ * that finished reads them on the calling thread, which is the loader.
+ */
+public class ExpandedStatesController {
+
+    private final static String TAG = "RecentExpandedStates";
+
+    private static final String PREFS_NAME = "slim_recents_expanded_states";
+
+    private static final int MAX_ENTRIES = 64;
+
+    private final SharedPreferences mPrefs;
+    private final LruCache<String, Integer> mStates;
+
+    // Pending preference edits, null if nothing changed since last save.
+    private SharedPreferences.Editor mEditor;
+
+    // Guarded by this.
+    private boolean mLoaded;
+
+    public ExpandedStatesController(Context context) {
+        // Device protected storage, we may be asked before the user unlocked.
+        mPrefs = context.createDeviceProtectedStorageContext()
+                .getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+
+        mStates = new LruCache<String, Integer>(MAX_ENTRIES) {
+            @Override
+            protected void entryRemoved(boolean evicted, String key,
+                    Integer oldState, Integer newState) {
+                if (evicted) {
+                    getEditor().remove(key);
+                }
+            }
+        };
+
+        BackgroundThread.getHandler().post(new Runnable() {
+            @Override
+            public void run() {
+                ensureLoaded();
+            }
+        });
+    }
+
+    private synchronized void ensureLoaded() {
+        if (mLoaded) {
+            return;
+        }
+        for (Map.Entry<String, ?> entry : mPrefs.getAll().entrySet()) {
+            if (entry.getValue() instanceof Integer) {
+                mStates.put(entry.getKey(), (Integer) entry.getValue());
+            }
+        }
+        mLoaded = true;
+    }
+
+    /**
+     * Get the expanded state of the app or EXPANDED_STATE_UNKNOWN.
+     */
+    public int get(String identifier) {
+        if (identifier == null) {
+            return RecentPanelView.EXPANDED_STATE_UNKNOWN;
+        }
+        ensureLoaded();
+        final Integer state = mStates.get(identifier);
+        return state != null ? state : RecentPanelView.EXPANDED_STATE_UNKNOWN;
+    }
+
+    /**
+     * Called for cards of a finished load, so the states are loaded already.
+     */
+    public void put(String identifier, int state) {
+        if (identifier == null) {
+            return;
+        }
+        ensureLoaded();
+        final Integer oldState = mStates.put(identifier, state);
+        if (oldState == null || oldState != state) {
+            getEditor().putInt(identifier, state);
+        }
+    }
+
+    public void remove(String identifier) {
+        if (identifier == null) {
+            return;
+        }
+        ensureLoaded();
+        if (mStates.remove(identifier) != null) {
+            getEditor().remove(identifier);
+        }
+    }
+
+    /**
+     * Write pending changes in background.
+     */
+    public synchronized void save() {
+        if (mEditor != null) {
+            mEditor.apply();
+            mEditor = null;
+        }
+    }
+
+    private synchronized SharedPreferences.Editor getEditor() {
+        if (mEditor == null) {
+            mEditor = mPrefs.edit();
+        }
+        return mEditor;
+    }
+}
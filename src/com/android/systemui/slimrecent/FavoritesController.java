@@ -0,0 +1,316 @@
+/*
+ * Copyright (C) 2026 Android Ice Cold Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.systemui.slimrecent;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.os.Handler;
+import android.provider.Settings;
+import android.util.ArraySet;
+import android.util.AtomicFile;
+import android.util.Log;
+
+import com.android.internal.os.BackgroundThread;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * This class holds the user favorites.
+ *
+ * The favorites live in memory and are written per user into a small
+ * binary file in background. Several changes in a short time are
+ * written at once. On first use the old pipe separated
+ * Settings.System.RECENT_PANEL_FAVORITES value is migrated.
+ *
+ * The favorites of a user are read on the background thread. The card
+ * loader reads them itself if that did not happen yet. Changes done before
+ * they are loaded are applied after loading.
+ */
+public class FavoritesController {
+
+    private final static String TAG = "RecentFavoritesController";
+
+    private static final String FILE_PREFIX = "slim_recents_favorites_";
+    private static final int FILE_VERSION = 1;
+
+    // Batch all changes done within this time into one write.
+    private static final long SAVE_DELAY_MS = 500;
+
+    /**
+     * Singleton.
+     */
+    private static FavoritesController sInstance;
+
+    private final Context mContext;
+    private final File mDir;
+    private final Handler mBgHandler;
+
+    // Guarded by this.
+    private final ArraySet<String> mFavorites = new ArraySet<String>();
+    private int mUserId;
+    private int mLoadedUserId = -1;
+    private int mLoadingUserId = -1;
+    private final ArrayList<Runnable> mPendingChanges = new ArrayList<Runnable>();
+    private ArraySet<String> mPendingSave;
+    private int mPendingSaveUserId;
+
+    /**
+     * Get the instance.
+     */
+    public static synchronized FavoritesController getInstance(Context context) {
+        if (sInstance != null) {
+            return sInstance;
+        } else {
+            return sInstance = new FavoritesController(context);
+        }
+    }
+
+    /**
+     * Constructor.
+     */
+    private FavoritesController(Context context) {
+        mContext = context;
+        mDir = context.createDeviceProtectedStorageContext().getFilesDir();
+        mBgHandler = BackgroundThread.getHandler();
+        mUserId = ActivityManager.getCurrentUser();
+        ensureLoaded();
+    }
+
+    /**
+     * Called on user switch. Favorites of the new user are loaded on next access.
+     */
+    public synchronized void setCurrentUser(int userId) {
+        if (mUserId != userId) {
+            // Changes not applied yet belong to the old user.
+            mPendingChanges.clear();
+        }
+        mUserId = userId;
+    }
+
+    /**
+     * Loads the favorites first if needed, so don't call it on the main thread.
+     */
+    public boolean isFavorite(String identifier) {
+        awaitLoaded();
+        synchronized (this) {
+            return identifier != null && mFavorites.contains(identifier);
+        }
+    }
+
+    /**
+     * Make sure the favorites of the current user are loaded. If the background
+     * thread did not get to it yet, e.g. while it sets up the icons handler after
+     * boot, we load them on the calling thread. Must not be called on the main thread.
+     */
+    public void awaitLoaded() {
+        while (true) {
+            final int userId;
+            synchronized (this) {
+                if (ensureLoaded()) {
+                    return;
+                }
+                userId = mLoadingUserId;
+            }
+            load(userId);
+        }
+    }
+
+    public synchronized void setFavorite(final String identifier, final boolean favorite) {
+        if (identifier == null) {
+            return;
+        }
+        if (!ensureLoaded()) {
+            mPendingChanges.add(() -> setFavorite(identifier, favorite));
+            return;
+        }
+        final boolean changed = favorite
+                ? mFavorites.add(identifier) : mFavorites.remove(identifier);
+        if (changed) {
+            scheduleSave();
+        }
+    }
+
+    /**
+     * Remove all favorites of the package, e.g. if it was uninstalled.
+     */
+    public synchronized void removePackage(final String packageName) {
+        if (packageName == null) {
+            return;
+        }
+        if (!ensureLoaded()) {
+            mPendingChanges.add(() -> removePackage(packageName));
+            return;
+        }
+        final String lowerPackageName = packageName.toLowerCase();
+        boolean changed = false;
+        for (int i = mFavorites.size() - 1; i >= 0; i--) {
+            if (mFavorites.valueAt(i).toLowerCase().contains(lowerPackageName)) {
+                mFavorites.removeAt(i);
+                changed = true;
+            }
+        }
+        if (changed) {
+            scheduleSave();
+        }
+    }
+
+    // True if the favorites of the current user are loaded, else start loading them.
+    private boolean ensureLoaded() {
+        final int userId = mUserId;
+        if (userId == mLoadedUserId) {
+            return true;
+        }
+        if (userId != mLoadingUserId) {
+            mLoadingUserId = userId;
+            mBgHandler.post(() -> load(userId));
+        }
+        return false;
+    }
+
+    // Runs on the background thread, or on the card loader from awaitLoaded. The file
+    // is an AtomicFile, so a write of an earlier session never gives us half of it.
+    private void load(int userId) {
+        final ArraySet<String> favorites = new ArraySet<String>();
+        synchronized (this) {
+            if (userId != mLoadingUserId) {
+                return;
+            }
+            if (isPendingSaveFor(userId)) {
+                // Not written yet, take what we are about to write.
+                favorites.addAll(mPendingSave);
+                finishLoad(userId, favorites, false);
+                return;
+            }
+        }
+        final AtomicFile file = getFile(userId);
+        final boolean migrate = !file.exists();
+        if (migrate) {
+            readFromSettings(userId, favorites);
+        } else {
+            readFavorites(file, favorites);
+        }
+        synchronized (this) {
+            if (userId == mLoadingUserId) {
+                finishLoad(userId, favorites, migrate);
+            }
+        }
+    }
+
+    private void finishLoad(int userId, ArraySet<String> favorites, boolean migrate) {
+        mFavorites.clear();
+        mFavorites.addAll(favorites);
+        mLoadedUserId = userId;
+        mLoadingUserId = -1;
+        if (migrate) {
+            // Write even if empty so we migrate only once.
+            scheduleSave();
+        }
+        for (Runnable change : mPendingChanges) {
+            change.run();
+        }
+        mPendingChanges.clear();
+    }
+
+    private void readFavorites(AtomicFile file, ArraySet<String> favorites) {
+        try (DataInputStream in = new DataInputStream(file.openRead())) {
+            if (in.readInt() != FILE_VERSION) {
+                return;
+            }
+            final int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                favorites.add(in.readUTF());
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to read favorites", e);
+        }
+    }
+
+    private void readFromSettings(int userId, ArraySet<String> favorites) {
+        final String value = Settings.System.getStringForUser(
+                mContext.getContentResolver(), Settings.System.RECENT_PANEL_FAVORITES, userId);
+        if (value != null && !value.isEmpty()) {
+            for (String favorite : value.split("\\|")) {
+                if (!favorite.isEmpty()) {
+                    favorites.add(favorite);
+                }
+            }
+        }
+    }
+
+    private boolean isPendingSaveFor(int userId) {
+        return mPendingSave != null && mPendingSaveUserId == userId;
+    }
+
+    private void scheduleSave() {
+        if (mPendingSave != null && mPendingSaveUserId != mLoadedUserId) {
+            // User switched meanwhile. Write the other user now.
+            mBgHandler.removeCallbacks(mSaveRunnable);
+            mSaveRunnable.run();
+        }
+        mPendingSave = new ArraySet<String>(mFavorites);
+        mPendingSaveUserId = mLoadedUserId;
+        mBgHandler.removeCallbacks(mSaveRunnable);
+        mBgHandler.postDelayed(mSaveRunnable, SAVE_DELAY_MS);
+    }
+
+    private final Runnable mSaveRunnable = new Runnable() {
+        @Override
+        public void run() {
+            final ArraySet<String> favorites;
+            final int userId;
+            synchronized (FavoritesController.this) {
+                if (mPendingSave == null) {
+                    return;
+                }
+                favorites = mPendingSave;
+                userId = mPendingSaveUserId;
+                mPendingSave = null;
+            }
+            writeFavorites(userId, favorites);
+        }
+    };
+
+    private void writeFavorites(int userId, ArraySet<String> favorites) {
+        final AtomicFile file = getFile(userId);
+        FileOutputStream fos = null;
+        try {
+            fos = file.startWrite();
+            final DataOutputStream out = new DataOutputStream(fos);
+            out.writeInt(FILE_VERSION);
+            out.writeInt(favorites.size());
+            for (int i = 0; i < favorites.size(); i++) {
+                out.writeUTF(favorites.valueAt(i));
+            }
+            out.flush();
+            file.finishWrite(fos);
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to write favorites", e);
+            if (fos != null) {
+                file.failWrite(fos);
+            }
+        }
+    }
+
+    private AtomicFile getFile(int userId) {
+        return new AtomicFile(new File(mDir, FILE_PREFIX + userId));
+    }
+}
@@ -30,6 +30,8 @@ import java.util.ArrayList;
  * This class is our LRU cache controller. It holds
  * tasks activity infos.
  *
+ * The card loader resolves tasks on several threads,
+ * so key bookkeeping is synchronized.
  */
 public class InfosCacheController {
 
@@ -53,7 +55,7 @@ public class InfosCacheController {
     /**
      * Get the instance.
      */
-    public static InfosCacheController getInstance(Context context) {
+    public static synchronized InfosCacheController getInstance(Context context) {
         if (sInstance != null) {
             return sInstance;
         } else {
@@ -76,7 +78,7 @@ public class InfosCacheController {
     }
 
     // Called from RecentController BroadcastReceiver
-    public void refreshPackage(String packageName) {
+    public synchronized void refreshPackage(String packageName) {
         if (packageName == null) {
             return;
         }
@@ -94,7 +96,7 @@ public class InfosCacheController {
     /**
      * Add the info to the LRU cache.
      */
-    protected void addInfosToMemoryCache(String key, ActivityInfo info) {
+    protected synchronized void addInfosToMemoryCache(String key, ActivityInfo info) {
         if (key != null && info != null) {
             mKeys.add(key);
             mMemoryCache.put(key, info);
@@ -114,7 +116,7 @@ public class InfosCacheController {
     /**
      * Remove a info from the LRU cache.
      */
-    protected ActivityInfo removeInfosFromMemCache(String key) {
+    protected synchronized ActivityInfo removeInfosFromMemCache(String key) {
         if (key == null) {
             return null;
         }
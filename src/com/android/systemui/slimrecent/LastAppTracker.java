@@ -0,0 +1,310 @@
+/*
+ * Copyright (C) 2026 Android Ice Cold Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.systemui.slimrecent;
+
+import static android.app.WindowConfiguration.ACTIVITY_TYPE_HOME;
+import static android.app.WindowConfiguration.ACTIVITY_TYPE_RECENTS;
+import static android.app.WindowConfiguration.ACTIVITY_TYPE_UNDEFINED;
+
+import android.app.ActivityManager;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.ResolveInfo;
+import android.os.Handler;
+import android.util.ArraySet;
+
+import com.android.internal.os.BackgroundThread;
+import com.android.systemui.shared.system.TaskStackChangeListener;
+import com.android.systemui.shared.system.TaskStackChangeListeners;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Keeps track of the last two apps the user was in.
+ *
+ * Double tap on recents and docking the last app are answered from
+ * here without asking the system or loading the panel. We follow task
+ * stack changes and drop tasks and the cached home package on package
+ * changes. Home, recents and apps blacklisted for the panel are never
+ * tracked. All calls are expected on the main thread.
+ */
+public class LastAppTracker {
+
+    private final static String TAG = "RecentLastAppTracker";
+
+    private static final int INVALID_TASK_ID = -1;
+
+    // Amount of running tasks we look at once to seed the tracker.
+    private static final int SEED_TASKS = 5;
+
+    private final Context mContext;
+    private final Handler mHandler;
+
+    // Most recent eligible task and the one before.
+    private int mLastTaskId = INVALID_TASK_ID;
+    private String mLastPackage;
+    private int mPreviousTaskId = INVALID_TASK_ID;
+    private String mPreviousPackage;
+
+    // True if the task in front is the last one, false if home or similar is in front.
+    private boolean mLastInFront;
+
+    // Cached home package, resolved again in background after package changes.
+    private String mHomePackage;
+
+    // Packages blacklisted for the recents panel.
+    private final ArraySet<String> mBlacklist = new ArraySet<String>();
+
+    private boolean mHasEvents;
+
+    private int mUserId;
+
+    private final TaskStackChangeListener mTaskStackListener = new TaskStackChangeListener() {
+        @Override
+        public void onTaskMovedToFront(ActivityManager.RunningTaskInfo taskInfo) {
+            mHasEvents = true;
+            onTaskInFront(taskInfo);
+        }
+
+        @Override
+        public void onTaskCreated(int taskId, ComponentName componentName) {
+            // A new task comes to front without being moved there.
+            mHasEvents = true;
+            onTaskInFront(taskId, componentName != null
+                    ? componentName.getPackageName() : null, ACTIVITY_TYPE_UNDEFINED);
+        }
+
+        @Override
+        public void onTaskStackChanged() {
+            // Covers going home and other changes without a front task event.
+            // Called often, so we ask only once for a burst of changes.
+            BackgroundThread.getHandler().removeCallbacks(mQueryFrontTask);
+            BackgroundThread.getHandler().post(mQueryFrontTask);
+        }
+
+        @Override
+        public void onTaskRemoved(int taskId) {
+            removeTask(taskId);
+        }
+    };
+
+    private final Runnable mQueryFrontTask = new Runnable() {
+        @Override
+        public void run() {
+            final ActivityManager am = (ActivityManager)
+                    mContext.getSystemService(Context.ACTIVITY_SERVICE);
+            final List<ActivityManager.RunningTaskInfo> tasks = am.getRunningTasks(1);
+            if (tasks == null || tasks.isEmpty()) {
+                return;
+            }
+            final ActivityManager.RunningTaskInfo taskInfo = tasks.get(0);
+            mHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    // Task switches come with their own events, which may be newer
+                    // than this answer. We only learn if the last app is in front.
+                    if (taskInfo.taskId == mLastTaskId) {
+                        mLastInFront = true;
+                    } else if (!isEligible(getPackageName(taskInfo),
+                            taskInfo.configuration.windowConfiguration.getActivityType())) {
+                        mLastInFront = false;
+                    }
+                }
+            });
+        }
+    };
+
+    public LastAppTracker(Context context, Handler handler) {
+        mContext = context;
+        mHandler = handler;
+        mUserId = ActivityManager.getCurrentUser();
+    }
+
+    public void start() {
+        TaskStackChangeListeners.getInstance().registerTaskStackListener(mTaskStackListener);
+        seed();
+    }
+
+    /**
+     * Task id of the app the user was in before the current one,
+     * or of the current app if home is in front. -1 if we have none.
+     */
+    public int getLastAppTaskId() {
+        return mLastInFront ? mPreviousTaskId : mLastTaskId;
+    }
+
+    /**
+     * Most recent task which is not the passed one, -1 if we have none.
+     */
+    public int getLastTaskIdExcluding(int taskId) {
+        return mLastTaskId != taskId ? mLastTaskId : mPreviousTaskId;
+    }
+
+    /**
+     * Called on package changes. Drops tasks of removed packages and
+     * forgets the home package which may have changed.
+     */
+    public void onPackageChanged(String packageName, boolean removed) {
+        refreshHomePackage();
+        if (!removed || packageName == null) {
+            return;
+        }
+        if (packageName.equals(mPreviousPackage)) {
+            removeTask(mPreviousTaskId);
+        }
+        if (packageName.equals(mLastPackage)) {
+            removeTask(mLastTaskId);
+        }
+    }
+
+    /**
+     * Called if the panel blacklist changed. Drops tracked tasks of
+     * blacklisted packages.
+     */
+    public void setBlacklist(Set<String> blacklist) {
+        mBlacklist.clear();
+        mBlacklist.addAll(blacklist);
+        if (mPreviousPackage != null && mBlacklist.contains(mPreviousPackage)) {
+            removeTask(mPreviousTaskId);
+        }
+        if (mLastPackage != null && mBlacklist.contains(mLastPackage)) {
+            removeTask(mLastTaskId);
+        }
+    }
+
+    /**
+     * Called on user switch. Tasks of the old user are of no use anymore.
+     */
+    public void setCurrentUser(int userId) {
+        if (userId == mUserId) {
+            return;
+        }
+        mUserId = userId;
+        mLastTaskId = mPreviousTaskId = INVALID_TASK_ID;
+        mLastPackage = mPreviousPackage = null;
+        mLastInFront = false;
+        mHasEvents = false;
+        seed();
+    }
+
+    private void onTaskInFront(ActivityManager.RunningTaskInfo taskInfo) {
+        onTaskInFront(taskInfo.taskId, getPackageName(taskInfo),
+                taskInfo.configuration.windowConfiguration.getActivityType());
+    }
+
+    private void onTaskInFront(int taskId, String packageName, int activityType) {
+        if (!isEligible(packageName, activityType)) {
+            // Home, recents or a skipped app is in front now.
+            mLastInFront = false;
+            return;
+        }
+        if (taskId != mLastTaskId) {
+            mPreviousTaskId = mLastTaskId;
+            mPreviousPackage = mLastPackage;
+            mLastTaskId = taskId;
+            mLastPackage = packageName;
+        }
+        mLastInFront = true;
+    }
+
+    private void removeTask(int taskId) {
+        if (taskId == INVALID_TASK_ID) {
+            return;
+        }
+        if (taskId == mLastTaskId) {
+            mLastTaskId = mPreviousTaskId;
+            mLastPackage = mPreviousPackage;
+            mLastInFront = false;
+        } else if (taskId != mPreviousTaskId) {
+            return;
+        }
+        mPreviousTaskId = INVALID_TASK_ID;
+        mPreviousPackage = null;
+    }
+
+    // Fill the tracker once from the running tasks in background. Task stack
+    // events which arrived meanwhile are newer and win.
+    private void seed() {
+        BackgroundThread.getHandler().post(new Runnable() {
+            @Override
+            public void run() {
+                final ActivityManager am = (ActivityManager)
+                        mContext.getSystemService(Context.ACTIVITY_SERVICE);
+                final List<ActivityManager.RunningTaskInfo> tasks = am.getRunningTasks(SEED_TASKS);
+                final String homePackage = resolveHomePackage();
+                mHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        mHomePackage = homePackage;
+                        if (mHasEvents || tasks == null) {
+                            return;
+                        }
+                        for (int i = tasks.size() - 1; i >= 0; i--) {
+                            onTaskInFront(tasks.get(i));
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    // The activity type already filters home tasks. The package is our
+    // fallback, so resolving it in background is good enough.
+    private void refreshHomePackage() {
+        BackgroundThread.getHandler().post(new Runnable() {
+            @Override
+            public void run() {
+                final String homePackage = resolveHomePackage();
+                mHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        mHomePackage = homePackage;
+                    }
+                });
+            }
+        });
+    }
+
+    private boolean isEligible(String packageName, int activityType) {
+        if (activityType == ACTIVITY_TYPE_HOME || activityType == ACTIVITY_TYPE_RECENTS) {
+            return false;
+        }
+        if (packageName == null) {
+            return false;
+        }
+        return !packageName.equals(mHomePackage)
+                && !packageName.equals(mContext.getPackageName())
+                && !packageName.equals("com.android.systemui")
+                && !mBlacklist.contains(packageName);
+    }
+
+    private String getPackageName(ActivityManager.RunningTaskInfo taskInfo) {
+        final ComponentName component = taskInfo.topActivity != null
+                ? taskInfo.topActivity : taskInfo.baseActivity;
+        return component != null ? component.getPackageName() : null;
+    }
+
+    private String resolveHomePackage() {
+        final Intent launcherIntent = new Intent(Intent.ACTION_MAIN)
+                .addCategory(Intent.CATEGORY_HOME);
+        final ResolveInfo launcherInfo =
+                mContext.getPackageManager().resolveActivity(launcherIntent, 0);
+        return launcherInfo != null ? launcherInfo.activityInfo.packageName : null;
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2026 Android Ice Cold Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.systemui.slimrecent;
+
+import android.os.Process;
+import android.util.ArraySet;
+import android.util.Log;
+
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Thread priorities for all recents loading work.
+ *
+ * A speculative preload runs in background. As soon as the user
+ * actually waits for the panel we raise the loaders to display
+ * priority, including our own loader threads which are already busy.
+ */
+public class LoaderPriority {
+
+    private static final String TAG = "RecentLoaderPriority";
+
+    private static final int PRIORITY_PRELOAD = Process.THREAD_PRIORITY_BACKGROUND;
+    private static final int PRIORITY_VISIBLE = Process.THREAD_PRIORITY_DISPLAY;
+
+    private static volatile boolean sVisible;
+
+    // Thread ids of our loader threads which are alive.
+    private static final ArraySet<Integer> sLoaderThreads = new ArraySet<Integer>();
+
+    /**
+     * Priority for building the cards.
+     */
+    public static int getPriority() {
+        return sVisible ? PRIORITY_VISIBLE : PRIORITY_PRELOAD;
+    }
+
+    /**
+     * Priority for app icons and screenshots. Slightly below the cards.
+     */
+    public static int getAssetPriority() {
+        return getPriority() + 1;
+    }
+
+    /**
+     * Called when the panel is about to be shown or was hidden.
+     * Moves our busy loader threads to the matching priority.
+     */
+    public static void setVisible(boolean visible) {
+        if (sVisible == visible) {
+            return;
+        }
+        sVisible = visible;
+        final int priority = getPriority();
+        synchronized (sLoaderThreads) {
+            for (int i = 0; i < sLoaderThreads.size(); i++) {
+                setThreadPriority(sLoaderThreads.valueAt(i), priority);
+            }
+        }
+    }
+
+    /**
+     * Thread factory for loader executors. The threads follow setVisible().
+     */
+    public static ThreadFactory newThreadFactory(final String name) {
+        return new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable r) {
+                return new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        final int tid = Process.myTid();
+                        synchronized (sLoaderThreads) {
+                            sLoaderThreads.add(tid);
+                        }
+                        Process.setThreadPriority(getPriority());
+                        try {
+                            r.run();
+                        } finally {
+                            synchronized (sLoaderThreads) {
+                                sLoaderThreads.remove(tid);
+                            }
+                        }
+                    }
+                }, name);
+            }
+        };
+    }
+
+    private static void setThreadPriority(int tid, int priority) {
+        try {
+            Process.setThreadPriority(tid, priority);
+        } catch (IllegalArgumentException | SecurityException e) {
+            // Thread died meanwhile.
+            Log.w(TAG, "Unable to set priority of thread " + tid, e);
+        }
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright (C) 2026 Android Ice Cold Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.systemui.slimrecent;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.os.Handler;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.android.internal.os.BackgroundThread;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+
+/**
+ * Samples the available memory for the memory bar in background.
+ *
+ * The panel asks for the memory state several times per user action.
+ * We read /proc/meminfo at most once per interval on the background
+ * thread and publish the sample on the handler. Requests within the
+ * interval get the last sample right away and one fresh sample at the
+ * end of the interval. The total memory does not change, we read it once.
+ */
+public class MemorySampler {
+
+    private final static String TAG = "RecentMemorySampler";
+
+    private static final String MEMINFO_PATH = "/proc/meminfo";
+    private static final byte[] MEM_AVAILABLE = "MemAvailable:".getBytes();
+
+    public interface Listener {
+        /**
+         * Called on the handler thread with memory in bytes.
+         */
+        void onMemorySampled(long availMem, long totalMem);
+    }
+
+    private final Context mContext;
+    private final Handler mHandler;
+    private final long mInterval;
+    private final Listener mListener;
+
+    // Only touched on the background thread.
+    private final byte[] mBuffer = new byte[4096];
+
+    // Published sample, only touched on the handler thread.
+    private long mAvailMem;
+    private long mSampleTime;
+    private boolean mReading;
+
+    // Read once on the background thread.
+    private volatile long mTotalMem;
+
+    private final Runnable mRequestRunnable = new Runnable() {
+        @Override
+        public void run() {
+            requestSample();
+        }
+    };
+
+    private final Runnable mReadRunnable = new Runnable() {
+        @Override
+        public void run() {
+            if (mTotalMem == 0) {
+                mTotalMem = readMemoryInfo().totalMem;
+            }
+            final long availMem = readAvailableMemory();
+            mHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    mReading = false;
+                    mAvailMem = availMem;
+                    mSampleTime = SystemClock.uptimeMillis();
+                    mListener.onMemorySampled(mAvailMem, mTotalMem);
+                }
+            });
+        }
+    };
+
+    public MemorySampler(Context context, Handler handler, long interval, Listener listener) {
+        mContext = context;
+        mHandler = handler;
+        mInterval = interval;
+        mListener = listener;
+    }
+
+    /**
+     * Publish the memory state to the listener, a fresh one at most once
+     * per interval. Must be called on the handler thread.
+     */
+    public void requestSample() {
+        if (mReading) {
+            // The running read publishes.
+            return;
+        }
+        final long now = SystemClock.uptimeMillis();
+        if (mSampleTime != 0 && now - mSampleTime < mInterval) {
+            mListener.onMemorySampled(mAvailMem, mTotalMem);
+            // Follow up with a fresh sample once the interval is over.
+            mHandler.removeCallbacks(mRequestRunnable);
+            mHandler.postAtTime(mRequestRunnable, mSampleTime + mInterval);
+            return;
+        }
+        mHandler.removeCallbacks(mRequestRunnable);
+        mReading = true;
+        BackgroundThread.getHandler().post(mReadRunnable);
+    }
+
+    /**
+     * Total memory in bytes. Asks the system once if no sample was taken yet.
+     */
+    public long getTotalMemory() {
+        if (mTotalMem == 0) {
+            mTotalMem = readMemoryInfo().totalMem;
+        }
+        return mTotalMem;
+    }
+
+    private ActivityManager.MemoryInfo readMemoryInfo() {
+        final ActivityManager am =
+                (ActivityManager) mContext.getSystemService(Context.ACTIVITY_SERVICE);
+        final ActivityManager.MemoryInfo memInfo = new ActivityManager.MemoryInfo();
+        am.getMemoryInfo(memInfo);
+        return memInfo;
+    }
+
+    // MemAvailable of /proc/meminfo in bytes. Falls back to the
+    // activity manager if the kernel does not provide it.
+    private long readAvailableMemory() {
+        int length = 0;
+        try (FileInputStream is = new FileInputStream(MEMINFO_PATH)) {
+            int read;
+            while (length < mBuffer.length
+                    && (read = is.read(mBuffer, length, mBuffer.length - length)) > 0) {
+                length += read;
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to read " + MEMINFO_PATH, e);
+            return readMemoryInfo().availMem;
+        }
+        final long availKb = parseValue(mBuffer, length, MEM_AVAILABLE);
+        return availKb >= 0 ? availKb * 1024 : readMemoryInfo().availMem;
+    }
+
+    // Value in kB after the given label, -1 if it is missing.
+    private static long parseValue(byte[] buffer, int length, byte[] label) {
+        for (int i = 0; i <= length - label.length; i++) {
+            if (i != 0 && buffer[i - 1] != '\n') {
+                continue;
+            }
+            int j = 0;
+            while (j < label.length && buffer[i + j] == label[j]) {
+                j++;
+            }
+            if (j < label.length) {
+                continue;
+            }
+            int pos = i + j;
+            while (pos < length && buffer[pos] == ' ') {
+                pos++;
+            }
+            long value = 0;
+            boolean found = false;
+            while (pos < length && buffer[pos] >= '0' && buffer[pos] <= '9') {
+                value = value * 10 + (buffer[pos] - '0');
+                found = true;
+                pos++;
+            }
+            return found ? value : -1;
+        }
+        return -1;
+    }
+}
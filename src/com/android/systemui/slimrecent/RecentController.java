@@ -23,7 +23,6 @@ import static android.app.WindowConfiguration.ACTIVITY_TYPE_RECENTS;
 
 import android.app.ActivityManager;
 import android.app.ActivityManagerNative;
-import android.app.ActivityManager.MemoryInfo;
 import android.app.ActivityOptions;
 import android.app.IActivityManager;
 import android.app.KeyguardManager;
@@ -41,7 +40,6 @@ import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
 import android.content.pm.PackageManager;
-import android.content.pm.ResolveInfo;
 import android.content.res.Configuration;
 import android.content.res.Resources;
 import android.database.ContentObserver;
@@ -55,14 +53,18 @@ import android.graphics.Point;
 import android.graphics.Rect;
 import android.hardware.display.DisplayManager;
 import android.media.MediaMetadata;
-//import android.net.Uri;
 import android.os.Handler;
+import android.net.Uri;
+import android.os.Looper;
 //import android.os.Message;
+import android.os.MessageQueue;
 import android.os.RemoteException;
 import android.os.ServiceManager;
 import android.os.SystemClock;
+import android.os.Trace;
 import android.os.UserHandle;
 import android.provider.Settings;
+import android.util.ArraySet;
 import android.util.Log;
 import android.view.Display;
 import android.view.Gravity;
@@ -90,10 +92,11 @@ import androidx.recyclerview.widget.DefaultItemAnimator;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
-import java.util.ArrayList;
-import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 
+import com.android.internal.os.BackgroundThread;
 import com.android.internal.statusbar.IStatusBarService;
 
 import com.android.systemui.R;
@@ -131,6 +134,13 @@ public class RecentController implements RecentPanelView.OnExitListener,
     // Animation state.
     private int mAnimationState = ANIMATION_STATE_NONE;
 
+    // A cancelled preload is kept for this long, a preload may follow right away.
+    private static final long PRELOAD_CANCEL_DEBOUNCE_MS = 300;
+    // A new preload adopts a running or finished load if it is not older than this.
+    private static final long PRELOAD_REUSE_MAX_AGE_MS = 1000;
+    // Settings changes which arrive within this time are applied together.
+    private static final long SETTINGS_APPLY_DELAY_MS = 100;
+
     private RecyclerView mCardRecyclerView;
     private Configuration mConfiguration;
     private Context mContext;
@@ -145,11 +155,14 @@ public class RecentController implements RecentPanelView.OnExitListener,
     private boolean mIsShowing;
     private boolean mIsToggled;
     private boolean mIsPreloaded;
+    // Preload was started on gesture start and was not claimed by
+    // a preload, toggle or cancel call yet.
+    private boolean mIsSpeculativePreload;
+    // Uptime the current preload started loading.
+    private long mPreloadTime;
 
     private boolean mIsUserSetup;
 
-    private boolean mExpandAnimation;
-
     // The different views we need.
     private ViewGroup mParentView;
     private ViewGroup mRecentContainer;
@@ -186,16 +199,40 @@ public class RecentController implements RecentPanelView.OnExitListener,
     private AppSidebar mAppSidebar;
     private boolean mAppSidebarEnabled;
     private boolean mAppSidebarAttached = false;
+    // Sidebar window is added, maybe hidden in standby.
+    private boolean mAppSidebarAdded = false;
     private float mAppSidebarScaleFactor = AppSidebar.DEFAULT_SCALE_FACTOR;
     private boolean mAppSidebarOpenSimultaneously;
 
-    private ArrayList<TaskDescription> mTasks = new ArrayList<>();
-    private boolean mIsTopTaskInForeground;
+    // Keep the panel and sidebar windows added but hidden after closing,
+    // so opening again only shows them. Dropped on memory pressure.
+    private boolean mWindowStandby;
+    // Panel window is added, maybe hidden in standby.
+    private boolean mParentViewAdded;
+    // Memory was trimmed while the panel was showing, release on close.
+    private boolean mReleaseStandbyPending;
+
+    // Last apps for double tap and docking, kept up to date without loading the panel.
+    private LastAppTracker mLastAppTracker;
 
     private Handler mHandler;
 
     private IconsHandler mIconsHandler;
 
+    private MemorySampler mMemorySampler;
+
+    // The panel is set up when the main thread is idle after onStart, or
+    // earlier by ensureReady if it is needed before. Both run on the main
+    // thread, the sum of both sections is what onStart did before.
+    private static final String TRACE_START = "SlimRecents#onStart";
+    private static final String TRACE_INIT_PANEL = "SlimRecents#initPanel";
+    private boolean mReady;
+    // Created in background, its icon buffers are not small.
+    private FutureTask<IconsHandler> mIconsHandlerTask;
+    // Media state which arrived before the panel was ready.
+    private Runnable mPendingMediaPlaying;
+    private Runnable mPendingMedia;
+
     private boolean mWaitingClearAllConfirmation;
     private ObjectAnimator mClearAllAnimation;
 
@@ -220,6 +257,15 @@ public class RecentController implements RecentPanelView.OnExitListener,
     }
 
     public void onStart(Context context) {
+        Trace.beginSection(TRACE_START);
+        try {
+            start(context);
+        } finally {
+            Trace.endSection();
+        }
+    }
+
+    private void start(Context context) {
         mContext = context;
         mLayoutDirection = getLayoutDirection();
         mScaleFactor = Settings.System.getIntForUser(
@@ -233,6 +279,8 @@ public class RecentController implements RecentPanelView.OnExitListener,
         mWindowManager = (WindowManager)
                 mContext.getSystemService(Context.WINDOW_SERVICE);
         mWindowManagerService = WindowManagerGlobal.getWindowManagerService();
+        mWindowStandby = mContext.getResources().getBoolean(
+                R.bool.config_slimRecentWindowStandby);
 
         /**
          * Add intent actions to listen on it.
@@ -246,11 +294,58 @@ public class RecentController implements RecentPanelView.OnExitListener,
         mConfiguration = new Configuration();
         mConfiguration.updateFrom(context.getResources().getConfiguration());
 
+        mLastAppTracker = new LastAppTracker(mContext, mHandler);
+        mLastAppTracker.start();
+
+        mMemorySampler = new MemorySampler(mContext, mHandler, mContext.getResources()
+                .getInteger(R.integer.config_slimRecentMemSampleInterval),
+                mMemorySamplerListener);
+
+        mContext.registerComponentCallbacks(new ComponentCallback());
+
+        // The panel is not needed during SystemUI startup. Set it up once the
+        // main thread is idle, which keeps it out of onStart but not off the
+        // main thread.
+        mIconsHandlerTask = new FutureTask<>(() -> new IconsHandler(
+                mContext, R.dimen.recent_app_icon_size, mScaleFactor));
+        BackgroundThread.getHandler().post(mIconsHandlerTask);
+        Looper.myQueue().addIdleHandler(mInitPanelIdleHandler);
+    }
+
+    private final MessageQueue.IdleHandler mInitPanelIdleHandler =
+            new MessageQueue.IdleHandler() {
+        @Override
+        public boolean queueIdle() {
+            ensureReady();
+            return false;
+        }
+    };
+
+    /**
+     * Ready barrier. Sets up the panel now if it was not done yet.
+     * Entry points which need the panel or the settings call it first.
+     */
+    private void ensureReady() {
+        if (mReady) {
+            return;
+        }
+        mReady = true;
+        mHandler.getLooper().getQueue().removeIdleHandler(mInitPanelIdleHandler);
+        Trace.beginSection(TRACE_INIT_PANEL);
+        try {
+            initPanel();
+        } finally {
+            Trace.endSection();
+        }
+    }
+
+    // Inflates the panel and reads the settings the first time.
+    private void initPanel() {
         mParentView = new RecentBaseFrameLayout(mContext, this);
 
         // Inflate our recents layout
         mRecentContainer =
-                (RelativeLayout) View.inflate(context, R.layout.slim_recent, null);
+                (RelativeLayout) View.inflate(mContext, R.layout.slim_recent, null);
 
         // Get contents for rebuilding and gesture detector.
         mRecentContent =
@@ -273,7 +368,7 @@ public class RecentController implements RecentPanelView.OnExitListener,
         mEmptyRecentView =
                 (ImageView) mRecentContainer.findViewById(R.id.empty_recent);
 
-        mKeyguardView = View.inflate(context, R.layout.slim_recent_keyguard, null);
+        mKeyguardView = View.inflate(mContext, R.layout.slim_recent_keyguard, null);
 
         mKeyguardImage =
                 (ImageView) mKeyguardView.findViewById(R.id.keyguard_recent_img);
@@ -326,14 +421,31 @@ public class RecentController implements RecentPanelView.OnExitListener,
             }
         });
 
-        mIconsHandler = new IconsHandler(mContext, R.dimen.recent_app_icon_size, mScaleFactor);
+        mIconsHandler = getIconsHandler();
         mRecentPanelView.setIconsHandler(mIconsHandler);
 
         // Settings observer
         new SettingsObserver(mHandler).observe();
-        new KeepOpenSettingsObserver(mHandler).observe();
 
-        mContext.registerComponentCallbacks(new ComponentCallback());
+        if (mPendingMediaPlaying != null) {
+            mPendingMediaPlaying.run();
+            mPendingMediaPlaying = null;
+        }
+        if (mPendingMedia != null) {
+            mPendingMedia.run();
+            mPendingMedia = null;
+        }
+    }
+
+    private IconsHandler getIconsHandler() {
+        // Runs the task here if the background thread did not start it yet.
+        mIconsHandlerTask.run();
+        try {
+            return mIconsHandlerTask.get();
+        } catch (InterruptedException | ExecutionException e) {
+            Log.w(TAG, "Unable to create icons handler in background", e);
+            return new IconsHandler(mContext, R.dimen.recent_app_icon_size, mScaleFactor);
+        }
     }
 
     private IStatusBarService getStatusBarService() {
@@ -347,6 +459,9 @@ public class RecentController implements RecentPanelView.OnExitListener,
     public void refreshCachedPackage(String packageName, boolean removedPackage) {
         CacheController.getInstance(mContext, null).refreshPackage(packageName, removedPackage);
         InfosCacheController.getInstance(mContext).refreshPackage(packageName);
+        if (mLastAppTracker != null) {
+            mLastAppTracker.onPackageChanged(packageName, removedPackage);
+        }
     }
 
     public void evictAllCaches() {
@@ -482,6 +597,7 @@ public class RecentController implements RecentPanelView.OnExitListener,
 
     @Override
     public void toggleRecentApps() {
+        ensureReady();
         if (!mIsUserSetup) {
             return;
         }
@@ -498,6 +614,10 @@ public class RecentController implements RecentPanelView.OnExitListener,
         if (mAnimationState == ANIMATION_STATE_NONE) {
             if (!isShowing()) {
                 mIsToggled = true;
+                mIsSpeculativePreload = false;
+                mHandler.removeCallbacks(mCancelPreloadRunnable);
+                // The user is waiting now. Move loading work out of background.
+                LoaderPriority.setVisible(true);
                 if (!mIsPreloaded) {
                     // This should never happen due that preload should
                     // always be done if someone calls recents. Well a lot
@@ -555,76 +675,29 @@ public class RecentController implements RecentPanelView.OnExitListener,
         final ActivityOptions options =
                 ActivityOptionsCompat.makeSplitScreenOptions(true/*dockTopLeft*/);
         if (ActivityManagerWrapper.getInstance().startActivityFromRecents(id, options)) {
-            openLastApptoBottom();
+            openLastApptoBottom(id);
         }
    }
 
-    private void openLastApptoBottom() {
-
-        int taskid = 0;
-        boolean doWeHaveAtask = true;
-
-        ActivityManager.RunningTaskInfo lastTask = getLastTask(mAm);
-        if (lastTask != null) {
-            // available task in this stack, we can dock it to the other side
-            taskid = lastTask.id;
-        } else {
-            // let's search in recent apps list
-            List<ActivityManager.RecentTaskInfo> recentTasks = getRecentTasks();
-            if (recentTasks != null && recentTasks.size() > 1) {
-                ActivityManager.RecentTaskInfo recentInfo = recentTasks.get(1);
-                taskid = recentInfo.persistentId;
-            } else  {
-                // user cleared all apps, we don't have any taskid to choose
-                doWeHaveAtask = false;
-            }
-        }
-        if (doWeHaveAtask) {
-            try {
-                mIam.startActivityFromRecents(taskid, getAnimation(mContext).toBundle());
-            } catch (RemoteException e) {}
+    private void openLastApptoBottom(int dockedTaskId) {
+        // Dock the last app beside the docked one to the other side.
+        final int taskId = mLastAppTracker.getLastTaskIdExcluding(dockedTaskId);
+        if (taskId >= 0) {
+            startTaskFromRecents(taskId);
         }
     }
 
-    private ActivityManager.RunningTaskInfo getLastTask(final ActivityManager am) {
-        final String defaultHomePackage = resolveCurrentLauncherPackage();
-        List<ActivityManager.RunningTaskInfo> tasks = am.getRunningTasks(5);
-        for (int i = 1; i < tasks.size(); i++) {
-            String packageName = tasks.get(i).topActivity.getPackageName();
-            if (!packageName.equals(defaultHomePackage)
-                    && !packageName.equals(mContext.getPackageName())
-                    && !packageName.equals("com.android.systemui")) {
-                return tasks.get(i);
-            }
+    private void openLastAppPanelToggle() {
+        final int taskId = mLastAppTracker.getLastAppTaskId();
+        if (taskId >= 0) {
+            startTaskFromRecents(taskId);
         }
-        return null;
-    }
-
-    private List<ActivityManager.RecentTaskInfo> getRecentTasks() {
-        return mAm.getRecentTasks(ActivityManager.getMaxRecentTasksStatic(),
-                ActivityManager.RECENT_IGNORE_UNAVAILABLE);
-    }
-
-    protected void addTasks(TaskDescription task) {
-        mTasks.add(task);
     }
 
-    protected void resetTasks() {
-        mTasks.clear();
-    }
-
-    protected void isTopTaskInForeground(boolean toptask) {
-        mIsTopTaskInForeground = toptask;
-    }
-
-    private void openLastAppPanelToggle() {
-        if (mTasks != null && !mTasks.isEmpty()) {
-            if (!mIsTopTaskInForeground) {
-                startApplication(mTasks.get(0));
-            } else if (mTasks.size() > 1) {
-                startApplication(mTasks.get(1));
-            }
-        }
+    private void startTaskFromRecents(int taskId) {
+        try {
+            mIam.startActivityFromRecents(taskId, getAnimation(mContext).toBundle());
+        } catch (RemoteException e) {}
     }
 
     protected void startApplication(TaskDescription td) {
@@ -661,32 +734,90 @@ public class RecentController implements RecentPanelView.OnExitListener,
                 R.anim.recent_screen_fade_out);
     }
 
-    private String resolveCurrentLauncherPackage() {
-        final Intent launcherIntent = new Intent(Intent.ACTION_MAIN)
-                .addCategory(Intent.CATEGORY_HOME);
-        final PackageManager pm = mContext.getPackageManager();
-        final ResolveInfo launcherInfo = pm.resolveActivity(launcherIntent, 0);
-        return launcherInfo.activityInfo.packageName;
-    }
-
     /**
      * External call. Preload recent tasks.
      */
     @Override
     public void preloadRecentApps() {
+        ensureReady();
         if (!mIsUserSetup) {
             return;
         }
+        if (mIsSpeculativePreload) {
+            // We are already warming up since the gesture started. Adopt it
+            // if it did not start yet or is recent enough, else load again.
+            mIsSpeculativePreload = false;
+            if (mHandler.hasCallbacks(mPreloadRunnable)
+                    || SystemClock.uptimeMillis() - mPreloadTime < PRELOAD_REUSE_MAX_AGE_MS) {
+                return;
+            }
+        }
+        // A cancel may still be pending from a fast preload/cancel/preload
+        // sequence. Keep the running or just finished load if it is recent enough.
+        mHandler.removeCallbacks(mCancelPreloadRunnable);
+        if (mIsPreloaded
+                && SystemClock.uptimeMillis() - mPreloadTime < PRELOAD_REUSE_MAX_AGE_MS) {
+            return;
+        }
         // Post this to ensure that we don't block the touch feedback
         // on the nav bar button which triggers this.
-        mHandler.post(() -> {
-           if (mRecentPanelView != null) {
+        mHandler.removeCallbacks(mPreloadRunnable);
+        mHandler.post(mPreloadRunnable);
+    }
+
+    private final Runnable mPreloadRunnable = new Runnable() {
+        @Override
+        public void run() {
+            if (mRecentPanelView != null) {
                 mIsPreloaded = true;
+                mPreloadTime = SystemClock.uptimeMillis();
                 setSystemUiVisibilityFlags();
-                mRecentPanelView.setCancelledByUser(false);
                 mRecentPanelView.loadTasks();
             }
-        });
+        }
+    };
+
+    private final Runnable mCancelPreloadRunnable = new Runnable() {
+        @Override
+        public void run() {
+            if (mIsToggled || isShowing()) {
+                return;
+            }
+            mIsPreloaded = false;
+            mRecentPanelView.cancelLoading();
+            LoaderPriority.setVisible(false);
+        }
+    };
+
+    /**
+     * External call. The user started a navigation gesture which may end in recents.
+     * Warm up cards, icons and first screenshots in background now. A following
+     * preload or toggle adopts this load.
+     *
+     * Meant for the navigation bar gesture handler on gesture start, paired with
+     * #link:cancelSpeculativePreload when the gesture is abandoned. A touch down on
+     * the recents button already calls #link:preloadRecentApps.
+     */
+    public void startSpeculativePreload() {
+        ensureReady();
+        if (!mIsUserSetup || isShowing() || mIsPreloaded || mIsSpeculativePreload) {
+            return;
+        }
+        preloadRecentApps();
+        mIsSpeculativePreload = true;
+    }
+
+    /**
+     * External call. The gesture was abandoned. Drop the speculative preload.
+     * Cheap: if the load did not start yet nothing runs at all, otherwise the
+     * loader stops at its next checkpoint.
+     */
+    public void cancelSpeculativePreload() {
+        if (!mIsSpeculativePreload) {
+            return;
+        }
+        mIsSpeculativePreload = false;
+        cancelPreloadRecentApps();
     }
 
     /**
@@ -702,8 +833,16 @@ public class RecentController implements RecentPanelView.OnExitListener,
             return;
         }
         if (mRecentPanelView != null && !isShowing()) {
-            mIsPreloaded = false;
-            mRecentPanelView.setCancelledByUser(true);
+            mIsSpeculativePreload = false;
+            if (mHandler.hasCallbacks(mPreloadRunnable)) {
+                // Loading did not even start. Nothing to keep.
+                mHandler.removeCallbacks(mPreloadRunnable);
+                mIsPreloaded = false;
+                return;
+            }
+            // Don't throw the load away yet, a preload may follow in a moment.
+            mHandler.removeCallbacks(mCancelPreloadRunnable);
+            mHandler.postDelayed(mCancelPreloadRunnable, PRELOAD_CANCEL_DEBOUNCE_MS);
         }
     }
 
@@ -827,6 +966,7 @@ public class RecentController implements RecentPanelView.OnExitListener,
     }
 
     public void scrollPanel(boolean down) {
+        ensureReady();
         if (mWaitingClearAllConfirmation) {
             cancelClearAllWaiting();
         }
@@ -834,7 +974,8 @@ public class RecentController implements RecentPanelView.OnExitListener,
     }
 
     public void clearAllAppsFromSwipe() {
-        if (mTasks == null || mTasks.isEmpty()) {
+        ensureReady();
+        if (!mRecentPanelView.atLeastOneTaskAvailable()) {
             return;
         }
         if (!mWaitingClearAllConfirmation) {
@@ -869,20 +1010,27 @@ public class RecentController implements RecentPanelView.OnExitListener,
             mIsToggled = false;
             mIsShowing = false;
             // stop async task if still loading
-            mRecentPanelView.setCancelledByUser(true);
+            mRecentPanelView.cancelLoading();
+            LoaderPriority.setVisible(false);
             if (forceHide) {
                 mAnimationState = ANIMATION_STATE_NONE;
                 mHandler.removeCallbacks(mRecentRunnable);
-                mWindowManager.removeViewImmediate(mParentView);
+                mParentViewAdded = hideWindow(mParentView, true);
                 removeSidebarViewImmediate();
+                if (mReleaseStandbyPending) {
+                    releaseStandbyWindows();
+                }
                 return true;
             } else if (mAnimationState != ANIMATION_STATE_OUT) {
                 mAnimationState = ANIMATION_STATE_OUT;
                 mHandler.removeCallbacks(mRecentRunnable);
                 mHandler.postDelayed(mRecentRunnable, mContext.getResources().getInteger(
                         R.integer.config_recentDefaultDur));
-                mWindowManager.removeView(mParentView);
+                mParentViewAdded = hideWindow(mParentView, false);
                 removeSidebarView();
+                if (mReleaseStandbyPending) {
+                    releaseStandbyWindows();
+                }
                 return true;
             }
         }
@@ -896,7 +1044,8 @@ public class RecentController implements RecentPanelView.OnExitListener,
         sendCloseSystemWindows(SYSTEM_DIALOG_REASON_RECENT_APPS);
         mAnimationState = ANIMATION_STATE_NONE;
         mHandler.removeCallbacks(mRecentRunnable);
-        mWindowManager.addView(mParentView, generateLayoutParameter());
+        showWindow(mParentView, generateLayoutParameter(), mParentViewAdded);
+        mParentViewAdded = true;
         mRecentPanelView.scrollToFirst();
 
         KeyguardManager km =
@@ -921,6 +1070,68 @@ public class RecentController implements RecentPanelView.OnExitListener,
         }
     }
 
+    /**
+     * Add the window, or show it again if it is in standby.
+     */
+    private void showWindow(View view, WindowManager.LayoutParams params, boolean added) {
+        if (added) {
+            // Both go with the same relayout of the window.
+            view.setVisibility(View.VISIBLE);
+            mWindowManager.updateViewLayout(view, params);
+        } else {
+            mWindowManager.addView(view, params);
+        }
+    }
+
+    /**
+     * Remove the window, or hide it and keep it in standby.
+     *
+     * @return true if the window is still added
+     */
+    private boolean hideWindow(View view, boolean immediate) {
+        if (mWindowStandby) {
+            final WindowManager.LayoutParams params =
+                    (WindowManager.LayoutParams) view.getLayoutParams();
+            params.flags |= WindowManager.LayoutParams.FLAG_NOT_TOUCHABLE
+                    | WindowManager.LayoutParams.FLAG_NOT_FOCUSABLE;
+            view.setVisibility(View.GONE);
+            mWindowManager.updateViewLayout(view, params);
+            return true;
+        }
+        if (immediate) {
+            mWindowManager.removeViewImmediate(view);
+        } else {
+            mWindowManager.removeView(view);
+        }
+        return false;
+    }
+
+    /**
+     * Remove the windows we keep in standby while the panel is closed.
+     */
+    private void releaseStandbyWindows() {
+        if (isShowing()) {
+            mReleaseStandbyPending = true;
+            return;
+        }
+        mReleaseStandbyPending = false;
+        if (mParentViewAdded) {
+            mWindowManager.removeViewImmediate(mParentView);
+            mParentViewAdded = false;
+        }
+        releaseSidebarWindow();
+    }
+
+    /**
+     * Remove the sidebar window if it is only kept in standby.
+     */
+    private void releaseSidebarWindow() {
+        if (mAppSidebarAdded && !mAppSidebarAttached) {
+            mWindowManager.removeViewImmediate(mAppSidebar);
+            mAppSidebarAdded = false;
+        }
+    }
+
     protected static void sendCloseSystemWindows(String reason) {
         if (ActivityManagerNative.isSystemReady()) {
             try {
@@ -958,6 +1169,10 @@ public class RecentController implements RecentPanelView.OnExitListener,
      * Either gravity or scale factor of our recent panel can change.
      */
     private class SettingsObserver extends UserContentObserver {
+        // Keys changed since the last apply. All if an uri was missing.
+        private final ArraySet<String> mChangedKeys = new ArraySet<>();
+        private boolean mChangedAll;
+
         SettingsObserver(Handler handler) {
             super(handler);
         }
@@ -1035,157 +1250,259 @@ public class RecentController implements RecentPanelView.OnExitListener,
             update(true);
         }
 
+        @Override
+        protected void update(Uri uri) {
+            // Settings apps write several keys at once. Collect them and
+            // apply only what they need after a short delay.
+            if (uri != null) {
+                final String key = uri.getLastPathSegment();
+                if (Settings.Global.DEVICE_PROVISIONED.equals(key)
+                        || Settings.Secure.USER_SETUP_COMPLETE.equals(key)) {
+                    // Recents calls are dropped until setup is done, don't delay them.
+                    updateUserSetup();
+                    return;
+                }
+                mChangedKeys.add(key);
+            } else {
+                mChangedAll = true;
+            }
+            mHandler.removeCallbacks(mApplyRunnable);
+            mHandler.postDelayed(mApplyRunnable, SETTINGS_APPLY_DELAY_MS);
+        }
+
         @Override
         protected void update(boolean firstBoot) {
-            // Close recent panel if it is opened
-            hideRecents(false);
+            // First boot or user switch, read everything now.
+            mHandler.removeCallbacks(mApplyRunnable);
+            mChangedKeys.clear();
+            mChangedAll = false;
+            apply(null);
+        }
 
+        private final Runnable mApplyRunnable = new Runnable() {
+            @Override
+            public void run() {
+                final ArraySet<String> keys = mChangedAll ? null : new ArraySet<>(mChangedKeys);
+                mChangedKeys.clear();
+                mChangedAll = false;
+                apply(keys);
+            }
+        };
+
+        private void updateUserSetup() {
+            final ContentResolver resolver = mContext.getContentResolver();
+            mIsUserSetup = Settings.Global.getInt(resolver,
+                    Settings.Global.DEVICE_PROVISIONED, 0) != 0
+                    && Settings.Secure.getInt(resolver,
+                    Settings.Secure.USER_SETUP_COMPLETE, 0) != 0;
+        }
+
+        private boolean changed(ArraySet<String> keys, String key) {
+            return keys == null || keys.contains(key);
+        }
+
+        /**
+         * Read and apply the given settings keys, all if keys is null.
+         */
+        private void apply(ArraySet<String> keys) {
             ContentResolver resolver = mContext.getContentResolver();
 
-            int expandMode = Settings.System.getIntForUser(
-                        resolver, Settings.System.RECENT_PANEL_EXPANDED_MODE,
-                        RecentPanelView.EXPANDED_MODE_AUTO,
-                        UserHandle.USER_CURRENT);
-            mLayoutManager =
-                    new CacheMoreCardsLayoutManager(mContext, mWindowManager, expandMode);
-            mLayoutManager.setReverseLayout(true);
-            mCardRecyclerView.setLayoutManager(mLayoutManager);
-            mCardRecyclerView.setItemAnimator(mItemAnimator);
+            // Changes to these need a new load of the cards.
+            final boolean reload = keys == null
+                    || changed(keys, Settings.System.RECENT_PANEL_EXPANDED_MODE)
+                    || changed(keys, Settings.System.RECENT_PANEL_SCALE_FACTOR)
+                    || changed(keys, Settings.System.LOCK_TO_APP_ENABLED)
+                    || changed(keys, Settings.System.RECENTS_MAX_APPS)
+                    || changed(keys, Settings.System.SLIM_RECENTS_CORNER_RADIUS)
+                    || changed(keys, Settings.System.SLIM_RECENTS_BLACKLIST_VALUES)
+                    || changed(keys, Settings.System.SLIM_RECENTS_ICON_PACK);
+            // Changes to these need a new layout of the panel.
+            final boolean relayout = reload
+                    || changed(keys, Settings.System.RECENT_PANEL_GRAVITY)
+                    || changed(keys, Settings.System.SLIM_RECENT_AICP_EMPTY_DRAWABLE);
+
+            if (relayout) {
+                // Close recent panel if it is opened
+                hideRecents(false);
+            }
+
+            if (keys == null) {
+                mLayoutManager = new CacheMoreCardsLayoutManager(mContext);
+                mLayoutManager.setReverseLayout(true);
+                mCardRecyclerView.setLayoutManager(mLayoutManager);
+                mCardRecyclerView.setItemAnimator(mItemAnimator);
+            }
 
             // Get user gravity.
-            mUserGravity = Settings.System.getIntForUser(
-                    resolver, Settings.System.RECENT_PANEL_GRAVITY, Gravity.END,
-                    UserHandle.USER_CURRENT);
+            if (changed(keys, Settings.System.RECENT_PANEL_GRAVITY)) {
+                mUserGravity = Settings.System.getIntForUser(
+                        resolver, Settings.System.RECENT_PANEL_GRAVITY, Gravity.END,
+                        UserHandle.USER_CURRENT);
+            }
 
-            mEnterExitAnimation = Settings.System.getIntForUser(
-                    resolver, Settings.System.SLIM_RECENT_ENTER_EXIT_ANIMATION, 0,
-                    UserHandle.USER_CURRENT);
+            if (changed(keys, Settings.System.SLIM_RECENT_ENTER_EXIT_ANIMATION)) {
+                mEnterExitAnimation = Settings.System.getIntForUser(
+                        resolver, Settings.System.SLIM_RECENT_ENTER_EXIT_ANIMATION, 0,
+                        UserHandle.USER_CURRENT);
+            }
 
-            mAicpEmptyView = Settings.System.getIntForUser(resolver,
-                    Settings.System.SLIM_RECENT_AICP_EMPTY_DRAWABLE, 1,
-                    UserHandle.USER_CURRENT) == 1;
+            if (changed(keys, Settings.System.SLIM_RECENT_AICP_EMPTY_DRAWABLE)) {
+                mAicpEmptyView = Settings.System.getIntForUser(resolver,
+                        Settings.System.SLIM_RECENT_AICP_EMPTY_DRAWABLE, 1,
+                        UserHandle.USER_CURRENT) == 1;
+            }
 
-            // Update colors in RecentPanelView
-            mPanelColor = Settings.System.getIntForUser(resolver,
-                    Settings.System.RECENT_PANEL_BG_COLOR, 0x00ffffff, UserHandle.USER_CURRENT);
+            final boolean panelColorChanged =
+                    changed(keys, Settings.System.RECENT_PANEL_BG_COLOR);
+            if (panelColorChanged) {
+                // Update colors in RecentPanelView
+                mPanelColor = Settings.System.getIntForUser(resolver,
+                        Settings.System.RECENT_PANEL_BG_COLOR, 0x00ffffff,
+                        UserHandle.USER_CURRENT);
+            }
 
             // Set main gravity and background images.
-            setGravityAndImageResources();
-
-            // Get user scale factor.
-            float scaleFactor = Settings.System.getIntForUser(
-                    resolver, Settings.System.RECENT_PANEL_SCALE_FACTOR, 100,
-                    UserHandle.USER_CURRENT) / 100.0f;
-
-            // If changed set new scalefactor, rebuild the recent panel
-            // and notify RecentPanelView about new value.
-            if (scaleFactor != mScaleFactor) {
-                mScaleFactor = scaleFactor;
-                rebuildRecentsScreen();
-                CacheController.getInstance(mContext, null).clearCache();
-                mIconsHandler.refresh();
-                mIconsHandler.setScaleFactor(scaleFactor);
-                //ThumbnailsCacheController.getInstance(mContext).clearCache();
+            if (relayout || panelColorChanged) {
+                setGravityAndImageResources();
             }
 
-            if (mRecentPanelView != null) {
+            if (changed(keys, Settings.System.RECENT_PANEL_SCALE_FACTOR)) {
+                // Get user scale factor.
+                float scaleFactor = Settings.System.getIntForUser(
+                        resolver, Settings.System.RECENT_PANEL_SCALE_FACTOR, 100,
+                        UserHandle.USER_CURRENT) / 100.0f;
+
+                // If changed set new scalefactor, rebuild the recent panel
+                // and notify RecentPanelView about new value.
+                if (scaleFactor != mScaleFactor) {
+                    mScaleFactor = scaleFactor;
+                    rebuildRecentsScreen();
+                    CacheController.getInstance(mContext, null).clearCache();
+                    mIconsHandler.refresh();
+                    mIconsHandler.setScaleFactor(scaleFactor);
+                    //ThumbnailsCacheController.getInstance(mContext).clearCache();
+                }
                 mRecentPanelView.setScaleFactor(mScaleFactor);
-                mRecentPanelView.setExpandedMode(expandMode);
+            }
+
+            if (changed(keys, Settings.System.RECENT_PANEL_EXPANDED_MODE)) {
+                mRecentPanelView.setExpandedMode(Settings.System.getIntForUser(
+                        resolver, Settings.System.RECENT_PANEL_EXPANDED_MODE,
+                        RecentPanelView.EXPANDED_MODE_AUTO,
+                        UserHandle.USER_CURRENT));
+            }
+            if (changed(keys, Settings.System.RECENT_CARD_BG_COLOR)) {
+                // Recolors the cards we have, no new load needed.
                 mRecentPanelView.setCardColor(Settings.System.getIntForUser(
                     resolver, Settings.System.RECENT_CARD_BG_COLOR, 0x00ffffff,
                     UserHandle.USER_CURRENT));
+            }
+            if (changed(keys, Settings.System.LOCK_TO_APP_ENABLED)) {
                 mRecentPanelView.isScreenPinningEnabled(Settings.System.getIntForUser(
                         resolver, Settings.System.LOCK_TO_APP_ENABLED, 0,
                         UserHandle.USER_CURRENT) == 1);
+            }
+            if (changed(keys, Settings.System.RECENTS_MAX_APPS)) {
                 mRecentPanelView.setMaxAppsToLoad(Settings.System.getIntForUser(
                         resolver, Settings.System.RECENTS_MAX_APPS, 15,
                         UserHandle.USER_CURRENT));
+            }
+            if (changed(keys, Settings.System.SLIM_RECENTS_CORNER_RADIUS)) {
                 mRecentPanelView.setCornerRadius(Converter.floatDpToPx(mContext,
                         Settings.System.getIntForUser(resolver,
                                 Settings.System.SLIM_RECENTS_CORNER_RADIUS, 5,
                                 UserHandle.USER_CURRENT)));
+            }
+            if (changed(keys, Settings.System.SLIM_RECENTS_BLACKLIST_VALUES)) {
                 mRecentPanelView.setBlackList(Settings.System.getStringForUser(
                         resolver, Settings.System.SLIM_RECENTS_BLACKLIST_VALUES,
                         UserHandle.USER_CURRENT));
+                mLastAppTracker.setBlacklist(mRecentPanelView.getBlackList());
             }
 
-            mRecentContent.setElevation(50);
+            if (panelColorChanged) {
+                mRecentContent.setElevation(50);
 
-            int backgroundColor = mPanelColor;
-            if (backgroundColor == 0x00ffffff) {
-                backgroundColor = mContext.getResources().getColor(R.color.recent_background);
+                int backgroundColor = mPanelColor;
+                if (backgroundColor == 0x00ffffff) {
+                    backgroundColor = mContext.getResources().getColor(R.color.recent_background);
+                }
+                mRecentContent.setBackgroundColor(backgroundColor);
+                mKeyguardView.setBackgroundColor(backgroundColor);
             }
-            mRecentContent.setBackgroundColor(backgroundColor);
-            mKeyguardView.setBackgroundColor(backgroundColor);
 
             // App sidebar settings
-            if (Settings.System.getIntForUser(resolver, Settings.System.USE_RECENT_APP_SIDEBAR, 1,
-                    UserHandle.USER_CURRENT) == 1) {
-                String appSidebarContent = Settings.System.getStringForUser(resolver,
-                        Settings.System.RECENT_APP_SIDEBAR_CONTENT, UserHandle.USER_CURRENT);
-                mAppSidebarEnabled = appSidebarContent != null && !appSidebarContent.equals("");
-            } else {
-                mAppSidebarEnabled = false;
+            if (changed(keys, Settings.System.USE_RECENT_APP_SIDEBAR)
+                    || changed(keys, Settings.System.RECENT_APP_SIDEBAR_CONTENT)) {
+                if (Settings.System.getIntForUser(resolver,
+                        Settings.System.USE_RECENT_APP_SIDEBAR, 1,
+                        UserHandle.USER_CURRENT) == 1) {
+                    String appSidebarContent = Settings.System.getStringForUser(resolver,
+                            Settings.System.RECENT_APP_SIDEBAR_CONTENT, UserHandle.USER_CURRENT);
+                    mAppSidebarEnabled = appSidebarContent != null
+                            && !appSidebarContent.equals("");
+                } else {
+                    mAppSidebarEnabled = false;
+                }
+                if (!mAppSidebarEnabled) {
+                    // Not shown again, so do not keep it in standby.
+                    releaseSidebarWindow();
+                }
+            }
+            if (changed(keys, Settings.System.RECENT_APP_SIDEBAR_SCALE_FACTOR)) {
+                mAppSidebarScaleFactor = Settings.System.getIntForUser(
+                        resolver, Settings.System.RECENT_APP_SIDEBAR_SCALE_FACTOR, 100,
+                        UserHandle.USER_CURRENT) / 100.0f;
+            }
+            if (changed(keys, Settings.System.RECENT_APP_SIDEBAR_OPEN_SIMULTANEOUSLY)) {
+                mAppSidebarOpenSimultaneously = Settings.System.getIntForUser(resolver,
+                        Settings.System.RECENT_APP_SIDEBAR_OPEN_SIMULTANEOUSLY, 1,
+                        UserHandle.USER_CURRENT) == 1;
             }
-            mAppSidebarScaleFactor = Settings.System.getIntForUser(
-                    resolver, Settings.System.RECENT_APP_SIDEBAR_SCALE_FACTOR, 100,
-                    UserHandle.USER_CURRENT) / 100.0f;
-            mAppSidebarOpenSimultaneously = Settings.System.getIntForUser(resolver,
-                    Settings.System.RECENT_APP_SIDEBAR_OPEN_SIMULTANEOUSLY, 1,
-                    UserHandle.USER_CURRENT) == 1;
-
-            enableMemDisplay = Settings.System.getInt(resolver,
-                    Settings.System.SLIM_RECENTS_MEM_DISPLAY, 0) == 1;
-            showMemDisplay();
-
-            mMemBarLongClickToClear = Settings.System.getInt(resolver,
-                    Settings.System.SLIM_RECENTS_MEM_DISPLAY_LONG_CLICK_CLEAR, 0) == 1;
-            mMembarcolor = Settings.System.getInt(mContext.getContentResolver(),
-                Settings.System.SLIM_MEM_BAR_COLOR, 0x00ffffff);
-            mMemtextcolor = Settings.System.getInt(mContext.getContentResolver(),
-                Settings.System.SLIM_MEM_TEXT_COLOR, 0x00ffffff);
-
-            String currentIconPack = Settings.System.getString(resolver,
-                Settings.System.SLIM_RECENTS_ICON_PACK);
-            CacheController.getInstance(mContext, null).clearCache();
-            mIconsHandler.updatePrefs(currentIconPack);
 
-            mIsUserSetup = Settings.Global.getInt(resolver,
-                    Settings.Global.DEVICE_PROVISIONED, 0) != 0
-                    && Settings.Secure.getInt(resolver,
-                    Settings.Secure.USER_SETUP_COMPLETE, 0) != 0;
+            if (changed(keys, Settings.System.SLIM_RECENTS_MEM_DISPLAY_LONG_CLICK_CLEAR)) {
+                mMemBarLongClickToClear = Settings.System.getInt(resolver,
+                        Settings.System.SLIM_RECENTS_MEM_DISPLAY_LONG_CLICK_CLEAR, 0) == 1;
+            }
+            final boolean memColorsChanged = changed(keys, Settings.System.SLIM_MEM_BAR_COLOR)
+                    || changed(keys, Settings.System.SLIM_MEM_TEXT_COLOR);
+            if (memColorsChanged) {
+                mMembarcolor = Settings.System.getInt(mContext.getContentResolver(),
+                    Settings.System.SLIM_MEM_BAR_COLOR, 0x00ffffff);
+                mMemtextcolor = Settings.System.getInt(mContext.getContentResolver(),
+                    Settings.System.SLIM_MEM_TEXT_COLOR, 0x00ffffff);
+            }
+            if (changed(keys, Settings.System.SLIM_RECENTS_MEM_DISPLAY)) {
+                enableMemDisplay = Settings.System.getInt(resolver,
+                        Settings.System.SLIM_RECENTS_MEM_DISPLAY, 0) == 1;
+                showMemDisplay();
+            } else if (memColorsChanged) {
+                updateMemoryStatus();
+            }
 
-            // force a new preloading on next Recents call after boot or a settings change
-            // to refresh the panel before the user shows it again.
-            mIsPreloaded = false;
-        }
-    }
+            if (changed(keys, Settings.System.SLIM_RECENTS_ICON_PACK)) {
+                String currentIconPack = Settings.System.getString(resolver,
+                    Settings.System.SLIM_RECENTS_ICON_PACK);
+                CacheController.getInstance(mContext, null).clearCache();
+                mIconsHandler.updatePrefs(currentIconPack);
+            }
 
-    /**
-     * Settingsobserver to take care of the user settings that don't require closing the panel.
-     */
-    private class KeepOpenSettingsObserver extends UserContentObserver {
-        KeepOpenSettingsObserver(Handler handler) {
-            super(handler);
-        }
+            if (keys == null) {
+                // We may be called due to a user switch.
+                final int currentUser = ActivityManager.getCurrentUser();
+                FavoritesController.getInstance(mContext).setCurrentUser(currentUser);
+                mLastAppTracker.setCurrentUser(currentUser);
+            }
 
-        @Override
-        protected void observe() {
-            super.observe();
-            ContentResolver resolver = mContext.getContentResolver();
-            resolver.registerContentObserver(Settings.System.getUriFor(
-                    Settings.System.RECENT_PANEL_FAVORITES),
-                    false, this, UserHandle.USER_ALL);
-            update(true);
-        }
+            if (keys == null) {
+                updateUserSetup();
+            }
 
-        @Override
-        protected void update(boolean firstBoot) {
-            ContentResolver resolver = mContext.getContentResolver();
-            if (mRecentPanelView != null) {
-                mRecentPanelView.setCurrentFavorites(Settings.System.getStringForUser(
-                        resolver, Settings.System.RECENT_PANEL_FAVORITES,
-                        UserHandle.USER_CURRENT));
+            if (reload) {
+                // force a new preloading on next Recents call after boot or a settings change
+                // to refresh the panel before the user shows it again.
+                mIsPreloaded = false;
+                mIsSpeculativePreload = false;
             }
         }
     }
@@ -1197,6 +1514,7 @@ public class RecentController implements RecentPanelView.OnExitListener,
     @Override
     public void onConfigurationChanged(Configuration newConfig) {
         if (mConfiguration.densityDpi != newConfig.densityDpi) {
+            ensureReady();
             hideRecents(true);
             evictAllCaches();
             mIconsHandler.onDpiChanged(mContext);
@@ -1390,7 +1708,8 @@ public class RecentController implements RecentPanelView.OnExitListener,
                     }
                     mAppSidebar.setSlimRecent(RecentController.this);
                     mAppSidebar.setSystemUiVisibility(mVisibility);
-                    mWindowManager.addView(mAppSidebar, generateLayoutParameter(true));
+                    showWindow(mAppSidebar, generateLayoutParameter(true), mAppSidebarAdded);
+                    mAppSidebarAdded = true;
                 }
             };
 
@@ -1398,16 +1717,22 @@ public class RecentController implements RecentPanelView.OnExitListener,
         addSidebarHandler.removeCallbacks(addSidebarRunnable);
         if (mAppSidebarAttached) {
             mAppSidebar.launchPendingSwipeAction();
-            mWindowManager.removeView(mAppSidebar);
+            mAppSidebarAdded = hideWindow(mAppSidebar, false);
             mAppSidebarAttached = false;
+            if (!mAppSidebarEnabled) {
+                releaseSidebarWindow();
+            }
         }
     }
 
     private void removeSidebarViewImmediate() {
         addSidebarHandler.removeCallbacks(addSidebarRunnable);
         if (mAppSidebarAttached) {
-            mWindowManager.removeViewImmediate(mAppSidebar);
+            mAppSidebarAdded = hideWindow(mAppSidebar, true);
             mAppSidebarAttached = false;
+            if (!mAppSidebarEnabled) {
+                releaseSidebarWindow();
+            }
         }
     }
 
@@ -1434,10 +1759,18 @@ public class RecentController implements RecentPanelView.OnExitListener,
         if (mMemText.getVisibility() == View.GONE
                 || mMemBar.getVisibility() == View.GONE) return;
 
-        MemoryInfo memInfo = new MemoryInfo();
-        mAm.getMemoryInfo(memInfo);
-            int available = (int)(memInfo.availMem / 1048576L);
-            int max = (int)(getTotalMemory() / 1048576L);
+        // Published to onMemorySampled, at most one read per interval.
+        mMemorySampler.requestSample();
+    }
+
+    private final MemorySampler.Listener mMemorySamplerListener = new MemorySampler.Listener() {
+        @Override
+        public void onMemorySampled(long availMem, long totalMem) {
+            if (mMemText == null || mMemText.getVisibility() == View.GONE
+                    || mMemBar.getVisibility() == View.GONE) return;
+
+            int available = (int)(availMem / 1048576L);
+            int max = (int)(totalMem / 1048576L);
             mMemText.setText(mContext.getResources().getString(R.string.slim_recents_free_ram,
                     available));
             mMemBar.setMax(max);
@@ -1448,26 +1781,35 @@ public class RecentController implements RecentPanelView.OnExitListener,
             mMemText.setTextColor(mMemtextcolor == 0x00ffffff
                     ? mContext.getResources().getColor(R.color.recents_membar_text_color)
                     : mMemtextcolor);
-    }
+        }
+    };
 
+    /**
+     * Total memory in bytes.
+     */
     public long getTotalMemory() {
-        MemoryInfo memInfo = new MemoryInfo();
-        mAm.getMemoryInfo(memInfo);
-        long totalMem = memInfo.totalMem;
-        return totalMem;
+        return mMemorySampler.getTotalMemory();
     }
 
+    /**
+     * Lays out some cards beyond the visible area so they are bound before
+     * they scroll in. How much depends on the measured card height, the
+     * scroll speed and if the screenshots of the next cards are loaded.
+     */
     private class CacheMoreCardsLayoutManager extends LinearLayoutManager {
-        private Context context;
-        private WindowManager mWindowManager;
-        private int mExpandMode;
+        // Frames we look ahead while scrolling.
+        private static final int SCROLL_FRAMES_AHEAD = 3;
+
+        private int mAverageCardHeight;
+        // Last scroll distance per frame, 0 if not scrolling.
+        private int mScrollDelta;
 
-        public CacheMoreCardsLayoutManager(Context context, WindowManager windowManager,
-                                           int expandMode) {
+        public CacheMoreCardsLayoutManager(Context context) {
             super(context);
-            this.context = context;
-            this.mWindowManager = windowManager;
-            this.mExpandMode = expandMode;
+            final Resources res = context.getResources();
+            mAverageCardHeight = res.getDimensionPixelSize(R.dimen.recent_card_height)
+                    + res.getDimensionPixelSize(R.dimen.recent_card_layout_marginTop)
+                    + res.getDimensionPixelSize(R.dimen.recent_card_layout_marginBottom);
         }
 
         @Override
@@ -1475,30 +1817,65 @@ public class RecentController implements RecentPanelView.OnExitListener,
             return true;
         }
 
+        @Override
+        public void onLayoutCompleted(RecyclerView.State state) {
+            super.onLayoutCompleted(state);
+            final int count = getChildCount();
+            if (count == 0) {
+                return;
+            }
+            int height = 0;
+            for (int i = 0; i < count; i++) {
+                final View child = getChildAt(i);
+                height += getDecoratedBottom(child) - getDecoratedTop(child);
+            }
+            mAverageCardHeight = Math.max(1, height / count);
+        }
+
+        @Override
+        public int scrollVerticallyBy(int dy, RecyclerView.Recycler recycler,
+                RecyclerView.State state) {
+            mScrollDelta = dy;
+            return super.scrollVerticallyBy(dy, recycler, state);
+        }
+
+        @Override
+        public void onScrollStateChanged(int state) {
+            super.onScrollStateChanged(state);
+            if (state == RecyclerView.SCROLL_STATE_IDLE) {
+                mScrollDelta = 0;
+            }
+        }
+
         @Override
         protected int getExtraLayoutSpace(RecyclerView.State state) {
-            int space = 300;
-            switch(mExpandMode) {
-                case RecentPanelView.EXPANDED_MODE_DISABLED:
-                    space = 300;
-                    break;
-                case RecentPanelView.EXPANDED_MODE_NEVER:
-                case RecentPanelView.EXPANDED_MODE_AUTO:
-                    space = 600;
-                    break;
-                case RecentPanelView.EXPANDED_MODE_ALWAYS:
-                    space = getScreenHeight();
-                    break;
+            // Always have the next card ready.
+            int space = mAverageCardHeight;
+            if (mScrollDelta != 0 && nextScreenshotsReady()) {
+                // Cover what the next frames scroll in. Without screenshots
+                // binding ahead only binds placeholders we bind again later.
+                space = Math.max(space, Math.abs(mScrollDelta) * SCROLL_FRAMES_AHEAD);
+            }
+            return Math.min(space, getHeight());
+        }
+
+        // True if the cards next to the visible ones have no screenshot to wait for.
+        private boolean nextScreenshotsReady() {
+            final RecyclerView.Adapter adapter = mCardRecyclerView.getAdapter();
+            if (!(adapter instanceof ExpandableCardAdapter)) {
+                return true;
             }
-            return space;
+            final ExpandableCardAdapter cardAdapter = (ExpandableCardAdapter) adapter;
+            return screenshotReady(cardAdapter, findFirstVisibleItemPosition() - 1)
+                    && screenshotReady(cardAdapter, findLastVisibleItemPosition() + 1);
         }
 
-        private int getScreenHeight() {
-            Display display = mWindowManager.getDefaultDisplay();
-            Point size = new Point();
-            display.getSize(size);
-            int screenHeight = size.y;
-            return screenHeight;
+        private boolean screenshotReady(ExpandableCardAdapter adapter, int pos) {
+            if (pos < 0 || pos >= adapter.getItemCount()) {
+                return true;
+            }
+            final ExpandableCardAdapter.ExpandableCard card = adapter.getCard(pos);
+            return !card.expanded || card.screenshot != null;
         }
     }
 
@@ -1577,15 +1954,18 @@ public class RecentController implements RecentPanelView.OnExitListener,
                 case ComponentCallbacks2.TRIM_MEMORY_BACKGROUND:
                  break;
                 case ComponentCallbacks2.TRIM_MEMORY_MODERATE:
+                    releaseStandbyWindows();
                     trimCaches(false);
                     break;
                 case ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW:
                     // We are going to be low on memory
+                    releaseStandbyWindows();
                     trimCaches(true);
                    break;
                 case ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL:
                 case ComponentCallbacks2.TRIM_MEMORY_COMPLETE:
                     // We are low on memory, so release everything
+                    releaseStandbyWindows();
                     evictAllCaches();
                     break;
                 default:
@@ -1619,28 +1999,29 @@ public class RecentController implements RecentPanelView.OnExitListener,
         }
     };
 
-    public void onStartExpandAnimation() {
-        mExpandAnimation = true;
-    }
-
     private DefaultItemAnimator mItemAnimator = new DefaultItemAnimator() {
         @Override
         public boolean canReuseUpdatedViewHolder(RecyclerView.ViewHolder viewHolder) {
-            // Similar to SimpleItemAnimator.setSupportsChangeAnimations(mExpandAnimation)
-            if (mExpandAnimation) {
-                mExpandAnimation = false;
-                return super.canReuseUpdatedViewHolder(viewHolder);
-            }
-            // Returning true means we don't support change animations here
+            // Returning true means we don't support change animations here.
+            // Cards animate expanding and collapsing themselves.
             return true;
         }
     };
 
     public void setMediaPlaying(boolean playing, String packageName) {
+        if (!mReady) {
+            mPendingMediaPlaying = () -> setMediaPlaying(playing, packageName);
+            return;
+        }
         mRecentPanelView.setMediaPlaying(playing, packageName);
     }
 
     public void setMedia(boolean colorizedMedia, int[] colors, Drawable artwork, MediaMetadata mediaMetaData, String title, String text) {
+        if (!mReady) {
+            mPendingMedia = () -> setMedia(colorizedMedia, colors, artwork, mediaMetaData,
+                    title, text);
+            return;
+        }
         mRecentPanelView.setMedia(colorizedMedia ? colors[0] : -1,
                 colorizedMedia ? ImageHelper.getResizedIconDrawable(
                 artwork, mContext, R.dimen.recent_app_icon_size, mScaleFactor) : null,
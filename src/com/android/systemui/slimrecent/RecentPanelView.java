@@ -27,7 +27,6 @@ import android.app.IActivityManager;
 import android.app.TaskStackBuilder;
 //import android.content.ActivityNotFoundException;
 import android.content.ComponentName;
-import android.content.ContentResolver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.pm.ActivityInfo;
@@ -50,14 +49,15 @@ import android.media.MediaMetadata;
 import android.net.Uri;
 import android.os.AsyncTask;
 import android.os.Handler;
-import android.os.Looper;
 import android.os.ParcelFileDescriptor;
 import android.os.Process;
 import android.os.RemoteException;
-import android.os.UserHandle;
 import android.os.UserManager;
 import android.provider.Settings;
+import android.text.TextUtils;
 import android.util.Log;
+import android.util.SparseArray;
+import android.util.SparseBooleanArray;
 import android.view.accessibility.AccessibilityEvent;
 //import android.view.Gravity;
 import android.view.MotionEvent;
@@ -88,7 +88,14 @@ import android.util.ArraySet;
 import java.util.List;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Our main view controller which handles and construct most of the view
@@ -105,7 +112,7 @@ public class RecentPanelView {
 
     public static final String TASK_PACKAGE_IDENTIFIER = "#ident:";
 
-    private static final int EXPANDED_STATE_UNKNOWN  = 0;
+    static final int EXPANDED_STATE_UNKNOWN  = 0;
     public static final int EXPANDED_STATE_EXPANDED  = 1;
     public static final int EXPANDED_STATE_COLLAPSED = 2;
     public static final int EXPANDED_STATE_BY_SYSTEM = 4;
@@ -117,6 +124,11 @@ public class RecentPanelView {
     // Don't even allow manually expanding
     public static final int EXPANDED_MODE_DISABLED  = 3;
 
+    private static final int LOADER_RUNNING = 1;
+
+    private static final int RECENT_TASKS_MIN_SLACK = 2;
+    private static final int RECENT_TASKS_MAX_SLACK = 10;
+
     //public static final String PLAYSTORE_REFERENCE = "com.android.vending";
     //public static final String AMAZON_REFERENCE    = "com.amazon.venezia";
 
@@ -133,15 +145,25 @@ public class RecentPanelView {
 
     // Our first task which is not displayed but needed for internal references.
     protected TaskDescription mFirstTask;
-    // Array list of all expanded states of apps accessed during the session
-    private final ArrayList<TaskExpandedStates> mExpandedTaskStates =
-            new ArrayList<TaskExpandedStates>();
+    // Expanded states of apps accessed during this and former sessions
+    private final ExpandedStatesController mExpandedStates;
+
+    // Applies card inserts and changes once per frame.
+    private final CardUpdateDispatcher mUpdateDispatcher;
+
+    // Card views inflated in background before the first open.
+    private final CardViewPool mCardViewPool;
 
-    private boolean mCancelledByUser;
-    private boolean mIsLoading;
+    // Card loader state. The generation of the latest load request shifted
+    // left by one, with LOADER_RUNNING set while that load is in progress.
+    // Changed on the main thread only, read by the loader at its checkpoints.
+    private final AtomicInteger mLoaderState = new AtomicInteger();
     private boolean mAtLeastOneTaskAvailable;
 
     private int mMaxAppsToLoad;
+    // Extra tasks we request on top of mMaxAppsToLoad to cover blacklisted
+    // or unresolvable ones. Adapted after each load.
+    private int mRecentTasksSlack = RECENT_TASKS_MIN_SLACK;
     private float mCornerRadius;
     private float mScaleFactor;
     private int mIconSizeId;
@@ -152,9 +174,6 @@ public class RecentPanelView {
     private int mFirstExpandedItems = 2;
     private Resources mRes;
 
-    private String mCurrentFavorites = "";
-    private Set<String> mCurrentFavoritesSplit = new HashSet<String>();
-
     private Set<String> mBlacklist = new HashSet<String>();
 
     private ArraySet<Integer> mCurrentQuietProfiles = new ArraySet<Integer>();
@@ -165,6 +184,8 @@ public class RecentPanelView {
 
     private IconsHandler mIconsHandler;
 
+    private TaskRanker mTaskRanker;
+
     private int mMediaColor = -1;
     private boolean mMediaPlaying;
     private String mMediaPackageName = "";
@@ -172,6 +193,22 @@ public class RecentPanelView {
     private String mMediaText = null;
     private Drawable mArtWork;
 
+    // All card loads run one after another on our own thread, so a stale load
+    // never competes with the one which replaced it.
+    private static final Executor sLoaderExecutor = Executors.newSingleThreadExecutor(
+            LoaderPriority.newThreadFactory("SlimRecentsLoader"));
+
+    // Small worker pool the loader fans out activity resolving and label loading to.
+    private static final int RESOLVER_THREADS = 3;
+    private static final ThreadPoolExecutor sResolverExecutor = new ThreadPoolExecutor(
+            RESOLVER_THREADS, RESOLVER_THREADS, 1, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(),
+            LoaderPriority.newThreadFactory("SlimRecentsResolver"));
+
+    static {
+        sResolverExecutor.allowCoreThreadTimeOut(true);
+    }
+
     final static BitmapFactory.Options sBitmapOptions;
 
     static {
@@ -185,11 +222,18 @@ public class RecentPanelView {
     private static final int OPTION_KILL = 1004;
     private static final int OPTION_CLOSE = 1005;
 
+    // Option icons are shared by all cards through their constant state.
+    private final SparseArray<Drawable.ConstantState> mOptionIcons = new SparseArray<>();
+
     private ItemTouchHelper mItemTouchHelper;
     private View mCurrentDraggingView;
 
     private class RecentCard extends ExpandableCard {
         TaskDescription task;
+        // True if the screenshot needs to be (re)loaded for the current task.
+        boolean screenshotStale = true;
+        // True if the icon is album art of the media player.
+        boolean mediaIcon;
 
         private RecentCard(TaskDescription task) {
             super(task.getLabel(), null);
@@ -203,6 +247,12 @@ public class RecentPanelView {
 
             this.context = mContext;
             this.identifier = task.identifier;
+            this.cardClickListener = new View.OnClickListener() {
+                @Override
+                public void onClick(View v) {
+                    startApplication(task);
+                }
+            };
 
             this.persistentTaskId = task.persistentTaskId;
             this.packageName = task.packageName;
@@ -212,7 +262,8 @@ public class RecentPanelView {
                 public boolean onLongClick(View v) {
                     favorite = !favorite;
                     handleFavoriteEntry(task);
-                    mCardAdapter.notifyItemChanged(index);
+                    mCardAdapter.notifyCardChanged(RecentCard.this,
+                            ExpandableCardAdapter.CHANGE_FAVORITE);
                     return true;
                 }
             };
@@ -226,15 +277,14 @@ public class RecentPanelView {
 
             this.hideOptionsListener = new ExpandableCardAdapter.HideOptionsListener() {
                 @Override
-                public void onHideOptions(int index) {
-                    hideOptions(index);
+                public void onHideOptions(ExpandableCard card) {
+                    hideOptions(card);
                 }
             };
 
             this.expandListener = new ExpandableCardAdapter.ExpandListener() {
                 @Override
                 public void onExpanded(boolean expanded) {
-                    mController.onStartExpandAnimation();
                     final int oldState = task.getExpandedState();
                     int state;
                     if (expanded) {
@@ -249,6 +299,13 @@ public class RecentPanelView {
                 }
             };
 
+            // Options are created when the user requests them the first time.
+            clearOptions();
+        }
+
+        @Override
+        protected void onCreateOptions() {
+            final TaskDescription task = this.task;
             View.OnClickListener listener = new View.OnClickListener() {
                 @Override
                 public void onClick(View v) {
@@ -264,7 +321,7 @@ public class RecentPanelView {
                     } else if (id == OPTION_KILL) {
                         if (RecentController.killAppLongClick(
                                 mContext, task.packageName, task.persistentTaskId)) {
-                            mCardAdapter.removeCard(index);
+                            mCardAdapter.removeCard(RecentCard.this);
                             removeApplication(task);
                         }
                         return;
@@ -291,21 +348,20 @@ public class RecentPanelView {
                 }
             };
 
-            clearOptions();
             addOption(new OptionsItem(
-                    mContext.getDrawable(R.drawable.ic_recent_app_info), OPTION_INFO, listener));
+                    getOptionIcon(R.drawable.ic_recent_app_info), OPTION_INFO, listener));
             /*if (checkAppInstaller(task.packageName, AMAZON_REFERENCE)
                     || checkAppInstaller(task.packageName, PLAYSTORE_REFERENCE)) {
                 addOption(new OptionsItem(
-                        mContext.getDrawable(R.drawable.ic_shop), OPTION_MARKET, listener));
+                        getOptionIcon(R.drawable.ic_shop), OPTION_MARKET, listener));
             }*/
             addOption(new OptionsItem(
-                    mContext.getDrawable(R.drawable.ic_multiwindow), OPTION_MULTIWINDOW, listener)
+                    getOptionIcon(R.drawable.ic_multiwindow), OPTION_MULTIWINDOW, listener)
                             .setTouchListener(touchListener));
             addOption(new OptionsItem(
-                    mContext.getDrawable(R.drawable.ic_kill_app), OPTION_KILL, listener));
+                    getOptionIcon(R.drawable.ic_kill_app), OPTION_KILL, listener));
             addOption(new OptionsItem(
-                    mContext.getDrawable(R.drawable.ic_done), OPTION_CLOSE, true));
+                    getOptionIcon(R.drawable.ic_done), OPTION_CLOSE, true));
         }
 
         private void updateExpandState() {
@@ -313,19 +369,7 @@ public class RecentPanelView {
             final boolean isTopTask =
                     (task.getExpandedState() & EXPANDED_STATE_TOPTASK) != 0;
 
-            final boolean isSystemExpanded =
-                    (task.getExpandedState() & EXPANDED_STATE_BY_SYSTEM) != 0;
-
-            final boolean isUserExpanded =
-                    (task.getExpandedState() & EXPANDED_STATE_EXPANDED) != 0;
-
-            final boolean isUserCollapsed =
-                    (task.getExpandedState() & EXPANDED_STATE_COLLAPSED) != 0;
-
-            final boolean isExpanded =
-                    ((isSystemExpanded && !isUserCollapsed) || isUserExpanded) && !isTopTask;
-
-            expanded = !mFastMode && !isTopTask && isExpanded;
+            expanded = isCardExpanded(task);
             expandVisible = !mFastMode && !isTopTask;
             noIcon = isTopTask && !mIsScreenPinningEnabled && !mFastMode;
             pinAppIcon = isTopTask && mIsScreenPinningEnabled;
@@ -353,10 +397,23 @@ public class RecentPanelView {
     }
 
 
-    private void hideOptions(int index) {
+    private Drawable getOptionIcon(int resId) {
+        Drawable.ConstantState state = mOptionIcons.get(resId);
+        if (state == null) {
+            final Drawable icon = mContext.getDrawable(resId);
+            state = icon.getConstantState();
+            if (state == null) {
+                return icon;
+            }
+            mOptionIcons.put(resId, state);
+        }
+        return state.newDrawable(mRes);
+    }
+
+    private void hideOptions(ExpandableCard card) {
         ExpandableCardAdapter.ViewHolder vh =
                 (ExpandableCardAdapter.ViewHolder) mCardRecyclerView
-                .findViewHolderForLayoutPosition(index);
+                .findViewHolderForItemId(card.getStableId());
         if (vh != null) {
             vh.hideOptions(true);
         }
@@ -393,6 +450,13 @@ public class RecentPanelView {
         mRes = context.getResources();
         mFirstExpandedItems =
                 mRes.getInteger(R.integer.expanded_items_default);
+        mExpandedStates = new ExpandedStatesController(context);
+        mTaskRanker = new UsageTaskRanker(context);
+        mUpdateDispatcher = new CardUpdateDispatcher(recyclerView);
+        mCardViewPool = new CardViewPool(mRes);
+        if (mCardRecyclerView != null) {
+            mCardRecyclerView.setRecycledViewPool(mCardViewPool);
+        }
 
         buildCardListAndAdapter();
 
@@ -404,8 +468,10 @@ public class RecentPanelView {
      */
     protected void buildCardListAndAdapter() {
         mCardAdapter = new ExpandableCardAdapter(mContext, mFastMode);
+        mUpdateDispatcher.setAdapter(mCardAdapter);
         if (mCardRecyclerView != null) {
             mCardRecyclerView.setAdapter(mCardAdapter);
+            mCardViewPool.warmUp(mCardAdapter, mCardRecyclerView);
         }
     }
 
@@ -518,9 +584,9 @@ public class RecentPanelView {
 
             @Override
             public void onSwiped(ViewHolder viewHolder, int direction) {
-                int pos = viewHolder.getAdapterPosition();
-                RecentCard card = (RecentCard) mCardAdapter.getCard(pos);
-                mCardAdapter.removeCard(pos);
+                RecentCard card = (RecentCard)
+                        ((ExpandableCardAdapter.ViewHolder) viewHolder).expCard;
+                mCardAdapter.removeCard(card);
                 removeApplication(card.task);
                 isSwipe = true;
             }
@@ -571,35 +637,9 @@ public class RecentPanelView {
      * Handle favorite task entry (add or remove) if user longpressed on app icon.
      */
     private void handleFavoriteEntry(TaskDescription td) {
-        ContentResolver resolver = mContext.getContentResolver();
-        String entryToSave = "";
-
-        if (!td.getIsFavorite()) {
-            if (mCurrentFavorites != null && !mCurrentFavorites.isEmpty()) {
-                entryToSave += mCurrentFavorites + "|";
-            }
-            entryToSave += td.identifier;
-        } else {
-            if (mCurrentFavorites == null) {
-                return;
-            }
-            for (String favorite : mCurrentFavorites.split("\\|")) {
-                if (favorite.equals(td.identifier)) {
-                    continue;
-                }
-                entryToSave += favorite + "|";
-            }
-            if (!entryToSave.isEmpty()) {
-                entryToSave = entryToSave.substring(0, entryToSave.length() - 1);
-            }
-        }
-
         td.setIsFavorite(!td.getIsFavorite());
-
-        Settings.System.putStringForUser(
-                resolver, Settings.System.RECENT_PANEL_FAVORITES,
-                entryToSave,
-                UserHandle.USER_CURRENT);
+        FavoritesController.getInstance(mContext).setFavorite(
+                td.identifier, td.getIsFavorite());
     }
 
     /**
@@ -620,6 +660,7 @@ public class RecentPanelView {
 
         // Remove app from task and expanded state list.
         removeExpandedTaskState(td.identifier);
+        mExpandedStates.save();
 
         // Refresh activity info on next app load if we removed the app
         // we can still keep icons
@@ -663,6 +704,7 @@ public class RecentPanelView {
             // Remove expanded state.
             removeExpandedTaskState(td.identifier);
         }
+        mExpandedStates.save();
 
         final List<ActivityManager.RecentTaskInfo> recentTasks = getAllRecentTasks();
         for (int i = 0; i < recentTasks.size(); i++) {
@@ -685,6 +727,7 @@ public class RecentPanelView {
      * Start application or move to forground if still active.
      */
     private void startApplication(TaskDescription td) {
+        mTaskRanker.onTaskLaunched(td);
         mController.startApplication(td);
         mController.onLaunchApplication();
         exit();
@@ -770,16 +813,16 @@ public class RecentPanelView {
      * Load all tasks we want.
      */
     protected void loadTasks() {
-        if (mController.isShowing() || mIsLoading) {
-            // loader is already running
+        if (mController.isShowing()) {
             return;
         }
         updateExpandedTaskStates();
 
         // We have all needed tasks now.
-        // Let us load the cards for it in background.
-        final CardLoader cardLoader = new CardLoader();
-        cardLoader.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+        // Let us load the cards for it in background. A load which may still
+        // be running is outdated now and stops at its next checkpoint.
+        final CardLoader cardLoader = new CardLoader(startLoading());
+        cardLoader.executeOnExecutor(sLoaderExecutor);
         mController.updateMemoryStatus();
     }
 
@@ -787,14 +830,15 @@ public class RecentPanelView {
      * Set correct visibility states for the listview and the empty recent icon.
      */
     private void setVisibility() {
-        mEmptyRecentView.setVisibility((
-                mCardAdapter.getItemCount() == 0) ? View.VISIBLE : View.GONE);
-        mCardRecyclerView.setVisibility((
-                mCardAdapter.getItemCount() == 0) ? View.GONE : View.VISIBLE);
+        // Count as well the cards which reach the adapter with the next frames.
+        final boolean empty = mCardAdapter.getItemCount() == 0
+                && mUpdateDispatcher.getPendingInsertCount() == 0;
+        mEmptyRecentView.setVisibility(empty ? View.VISIBLE : View.GONE);
+        mCardRecyclerView.setVisibility(empty ? View.GONE : View.VISIBLE);
 
         if (mEmptyRecentView.getDrawable() instanceof AnimatedVectorDrawable) {
             AnimatedVectorDrawable vd = (AnimatedVectorDrawable) mEmptyRecentView.getDrawable();
-            if (mCardAdapter.getItemCount() == 0) {
+            if (empty) {
                 vd.start();
             } else {
                 vd.stop();
@@ -804,56 +848,55 @@ public class RecentPanelView {
     }
 
     /**
-     * We are holding a list of user expanded state of apps.
-     * Update the List for actual apps.
+     * We are holding a store of user expanded state of apps.
+     * Update the store for actual apps.
      */
     private void updateExpandedTaskStates() {
         int count = mCardAdapter.getItemCount();
         for (int i = 0; i < count; i++) {
             RecentCard card = (RecentCard) mCardAdapter.getCard(i);
-            boolean updated = false;
-            for (TaskExpandedStates expandedState : mExpandedTaskStates) {
-                if (card.task.identifier.equals(expandedState.getIdentifier())) {
-                    updated = true;
-                    expandedState.setExpandedState(card.task.getExpandedState());
-                }
-            }
-            if (!updated) {
-                mExpandedTaskStates.add(
-                        new TaskExpandedStates(
-                                card.task.identifier, card.task.getExpandedState()));
-            }
+            mExpandedStates.put(card.task.identifier, card.task.getExpandedState());
         }
+        mExpandedStates.save();
         mController.updateMemoryStatus();
     }
 
     /**
-     * We are holding a list of user expanded state of apps.
+     * Expanded state of a card which shows the task.
+     */
+    private boolean isCardExpanded(TaskDescription task) {
+        final boolean isTopTask =
+                (task.getExpandedState() & EXPANDED_STATE_TOPTASK) != 0;
+
+        final boolean isSystemExpanded =
+                (task.getExpandedState() & EXPANDED_STATE_BY_SYSTEM) != 0;
+
+        final boolean isUserExpanded =
+                (task.getExpandedState() & EXPANDED_STATE_EXPANDED) != 0;
+
+        final boolean isUserCollapsed =
+                (task.getExpandedState() & EXPANDED_STATE_COLLAPSED) != 0;
+
+        final boolean isExpanded =
+                ((isSystemExpanded && !isUserCollapsed) || isUserExpanded) && !isTopTask;
+
+        return !mFastMode && !isTopTask && isExpanded;
+    }
+
+    /**
+     * We are holding a store of user expanded state of apps.
      * Get expanded state of the app.
      */
     private int getExpandedState(TaskDescription item) {
-        for (TaskExpandedStates oldTask : mExpandedTaskStates) {
-            if (item.identifier.equals(oldTask.getIdentifier())) {
-                    return oldTask.getExpandedState();
-            }
-        }
-        return EXPANDED_STATE_UNKNOWN;
+        return mExpandedStates.get(item.identifier);
     }
 
     /**
-     * We are holding a list of user expanded state of apps.
+     * We are holding a store of user expanded state of apps.
      * Remove expanded state entry due that app was removed by the user.
      */
     private void removeExpandedTaskState(String identifier) {
-        TaskExpandedStates expandedStateToDelete = null;
-        for (TaskExpandedStates expandedState : mExpandedTaskStates) {
-            if (expandedState.getIdentifier().equals(identifier)) {
-                expandedStateToDelete = expandedState;
-            }
-        }
-        if (expandedStateToDelete != null) {
-            mExpandedTaskStates.remove(expandedStateToDelete);
-        }
+        mExpandedStates.remove(identifier);
     }
 
     protected void notifyDataSetChanged(boolean forceupdate) {
@@ -862,19 +905,45 @@ public class RecentPanelView {
         }
     }
 
-    protected void setCancelledByUser(boolean cancelled) {
-        mCancelledByUser = cancelled;
+    /**
+     * Start a new load generation. Must be called on the main thread.
+     */
+    private int startLoading() {
+        final int generation = (mLoaderState.get() >>> 1) + 1;
+        mLoaderState.set((generation << 1) | LOADER_RUNNING);
+        return generation;
+    }
+
+    /**
+     * Mark the given load as finished if it is still the current one.
+     */
+    private void finishLoading(int generation) {
+        mLoaderState.compareAndSet((generation << 1) | LOADER_RUNNING, generation << 1);
     }
 
-    protected boolean atLeastOneTaskAvailable() {
-        return mAtLeastOneTaskAvailable;
+    /**
+     * Cancel the running load, if any. Its results are dropped.
+     */
+    protected void cancelLoading() {
+        mLoaderState.set(((mLoaderState.get() >>> 1) + 1) << 1);
+    }
+
+    protected boolean isLoading() {
+        return (mLoaderState.get() & LOADER_RUNNING) != 0;
     }
 
-    protected boolean isCancelledByUser() {
-        return mCancelledByUser;
+    private boolean isCurrentLoad(int generation) {
+        return (mLoaderState.get() >>> 1) == generation;
+    }
+
+    protected boolean atLeastOneTaskAvailable() {
+        return mAtLeastOneTaskAvailable;
     }
 
     protected void setScaleFactor(float factor) {
+        if (factor != mScaleFactor && mCardAdapter != null) {
+            mCardAdapter.clearCardHeights();
+        }
         mScaleFactor = factor;
     }
 
@@ -910,16 +979,16 @@ public class RecentPanelView {
     }
 
     protected void setCardColor(int color) {
+        if (mCardColor == color) {
+            return;
+        }
         mCardColor = color;
-    }
-
-    protected void setCurrentFavorites(String favorites) {
-        mCurrentFavoritesSplit.clear();
-        if (favorites != null) {
-            mCurrentFavorites = favorites;
-            for (String app : favorites.split("\\|")) {
-                mCurrentFavoritesSplit.add(app);
-            }
+        // Recolor the cards we have instead of loading them again.
+        final int count = mCardAdapter.getItemCount();
+        for (int i = 0; i < count; i++) {
+            final RecentCard card = (RecentCard) mCardAdapter.getCard(i);
+            card.cardBackgroundColor = getCardBackgroundColor(card.task);
+            mUpdateDispatcher.change(card, ExpandableCardAdapter.CHANGE_COLOR);
         }
     }
 
@@ -932,6 +1001,10 @@ public class RecentPanelView {
         }
     }
 
+    protected Set<String> getBlackList() {
+        return mBlacklist;
+    }
+
     protected void setCornerRadius(float radius) {
         mCornerRadius = radius;
     }
@@ -940,10 +1013,6 @@ public class RecentPanelView {
      * Notify listener that tasks are loaded.
      */
     private void taskLoaded() {
-        if (isCancelledByUser()) {
-            // Don't load
-            return;
-        }
         mAtLeastOneTaskAvailable = true;
         // we have at least one task, show the panel
         if (mOnTasksLoadedListener != null) {
@@ -985,11 +1054,29 @@ public class RecentPanelView {
      *       See #link:RecentCard, #link:RecentExpandedCard
      *       #link:RecentAppIcon and #link AppIconLoader
      */
-    private class CardLoader extends AsyncTask<Void, RecentCard, Boolean> {
+    private class CardLoader extends AsyncTask<Void, CardUpdate, Boolean> {
 
+        private final int mGeneration;
         private int mCounter;
 
-        public CardLoader() {
+        // Cards of the last load by persistent task id. Read only while we run.
+        // They are shown, so we never change them here. Their updates are
+        // prepared here and applied on the main thread, see applyUpdate.
+        private final SparseArray<RecentCard> mOldCards = new SparseArray<>();
+        // If we had cards, we diff against them at the end instead of adding one by one.
+        private boolean mDiffMode;
+        private final ArrayList<RecentCard> mLoadedCards = new ArrayList<>();
+        // Collapsed cards, their screenshots are loaded after the others.
+        // Only touched on the main thread.
+        private final ArrayList<RecentCard> mCollapsedCards = new ArrayList<>();
+
+        public CardLoader(int generation) {
+            mGeneration = generation;
+        }
+
+        // Checkpoint. True if the user cancelled us or a newer load replaced us.
+        private boolean isStale() {
+            return isCancelled() || !isCurrentLoad(mGeneration);
         }
 
         @Override
@@ -997,46 +1084,75 @@ public class RecentPanelView {
             super.onPreExecute();
 
             mAtLeastOneTaskAvailable = false;
-            mIsLoading = true;
 
             // be sure to hide cards optionsView in the viewHolder
-            // before cleaning up cards
+            // before reusing or cleaning up cards
             for (int i = 0; i < mCardAdapter.getItemCount(); i++) {
-                hideOptions(i);
+                final RecentCard card = (RecentCard) mCardAdapter.getCard(i);
+                hideOptions(card);
+                mOldCards.put(card.persistentTaskId, card);
             }
-            mCardAdapter.clearCards();
-            mController.resetTasks();
+            // Inserts of an outdated load never reach the adapter.
+            mUpdateDispatcher.clearInserts();
+            mDiffMode = mCardAdapter.getItemCount() > 0;
         }
 
         @Override
         protected Boolean doInBackground(Void... params) {
-            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            Process.setThreadPriority(LoaderPriority.getPriority());
 
             mCounter = 0;
-            int firstItems = 0;
-            final ArrayList<TaskDescription> mediaPlayingTasks = new ArrayList<>();
-            final ArrayList<TaskDescription> nonFavoriteTasks = new ArrayList<>();
-
-            final List<ActivityManager.RecentTaskInfo> recentTasks = getAllRecentTasks();
-
-            for (int i = 0; i < recentTasks.size(); i++) {
+            // Tasks which are shown for sure: the top task, the first items and favorites.
+            int committed = 0;
+            final ArrayList<TaskDescription> candidates = new ArrayList<>();
+            final boolean allowExpand = mExpandedMode != EXPANDED_MODE_NEVER
+                    && mExpandedMode != EXPANDED_MODE_DISABLED;
+
+            // Fetch only what we are going to display plus some slack for tasks we may
+            // skip. If we run short we fetch a larger batch and continue where we stopped.
+            final int maxRecentTasks = ActivityManager.getMaxRecentTasksStatic();
+            int fetchSize = Math.min(mMaxAppsToLoad + mRecentTasksSlack, maxRecentTasks);
+            List<ActivityManager.RecentTaskInfo> batch = getRecentTasks(fetchSize);
+            final ArrayList<ActivityManager.RecentTaskInfo> recentTasks = new ArrayList<>(batch);
+            int skippedTasks = 0;
+
+            // Resolve the tasks in parallel. We still consume the results in
+            // recents order, so each card is published as soon as it is its turn.
+            final ArrayList<Future<TaskDescription>> resolvedTasks = new ArrayList<>();
+            resolveTasks(recentTasks, resolvedTasks);
+
+            // Favorites are never dropped by clear all, so we need to know them for sure.
+            FavoritesController.getInstance(mContext).awaitLoaded();
+
+            for (int i = 0; ; i++) {
 
                 // If we reach max apps limit set by user, we are done
-                if (mCounter >= mMaxAppsToLoad) {
+                if (committed >= mMaxAppsToLoad) {
                     break;
                 }
-                if (isCancelled() || isCancelledByUser()) {
-                    mIsLoading = false;
+                if (i >= recentTasks.size()) {
+                    // We ran short. Fetch a larger batch if the system may have more
+                    // tasks for us and continue where we stopped.
+                    if (mCounter + candidates.size() >= mMaxAppsToLoad
+                            || batch.size() < fetchSize
+                            || fetchSize >= maxRecentTasks) {
+                        break;
+                    }
+                    fetchSize = Math.min(fetchSize * 2, maxRecentTasks);
+                    batch = getRecentTasks(fetchSize);
+                    appendNewTasks(recentTasks, batch);
+                    if (i >= recentTasks.size()) {
+                        break;
+                    }
+                    resolveTasks(recentTasks, resolvedTasks);
+                }
+                if (isStale()) {
+                    cancelResolving(resolvedTasks);
                     return false;
                 }
 
                 final ActivityManager.RecentTaskInfo recentInfo = recentTasks.get(i);
 
-                final Intent intent = new Intent(recentInfo.baseIntent);
-                if (recentInfo.origActivity != null) {
-                    intent.setComponent(recentInfo.origActivity);
-                }
-
                 boolean topTask = i == 0;
                 if (topTask) {
                     ActivityManager.RunningTaskInfo rTask = getRunningTask(mAm);
@@ -1046,38 +1162,29 @@ public class RecentPanelView {
                             topTask = false;
                         }
                     }
-                    mController.isTopTaskInForeground(topTask);
                 }
 
-                TaskDescription item = createTaskDescription(recentInfo.id,
-                        recentInfo.persistentId, recentInfo.baseIntent,
-                        recentInfo.origActivity, recentInfo.description,
-                        false, EXPANDED_STATE_UNKNOWN, recentInfo.taskDescription);
+                TaskDescription item = getResolvedTask(resolvedTasks.get(i));
 
                 if (item == null) {
                     // skip this item and go to next iteration
+                    skippedTasks++;
                     continue;
                 }
 
                 if (!topTask && !mBlacklist.isEmpty()
                         && mBlacklist.contains(item.packageName)) {
                     // skip this item and go to next iteration
+                    skippedTasks++;
                     continue;
                 }
 
-                if (mCounter < 2) {
-                    // we need just the first 2 apps for double tap recents last app action
-                    mController.addTasks(item);
-                }
+                // The task may be a copy of one of the last load, so reset all states.
+                item.setIsFavorite(
+                        FavoritesController.getInstance(mContext).isFavorite(item.identifier));
 
-                if (!mCurrentFavoritesSplit.isEmpty()
-                        && mCurrentFavoritesSplit.contains(item.identifier)) {
-                    item.setIsFavorite(true);
-                }
-
-                if (mMediaPlaying && item.packageName.toLowerCase().equals(mMediaPackageName)) {
-                    item.setisMediaPlayingTask(true);
-                }
+                item.setisMediaPlayingTask(mMediaPlaying
+                        && item.packageName.toLowerCase().equals(mMediaPackageName));
 
                 if (topTask) {
                     // User want to see actual running task. Set it here
@@ -1087,13 +1194,11 @@ public class RecentPanelView {
                     }
                     item.setExpandedState(oldState);
                     addCard(item, true);
-                    mFirstTask = item;
+                    committed++;
                 } else {
-                    // FirstExpandedItems value forces to show always the app screenshot
-                    // if the old state is not known and the user has set expanded mode to auto.
-                    // On all other items we check if they were expanded from the user
-                    // in last known recent app list and restore the state. This counts as well
-                    // if expanded mode is always or never.
+                    // We check if the app was expanded from the user in last known
+                    // recent app list and restore the state. System expanded state is
+                    // set for the first items, the ranking below decides for the rest.
                     int oldState = getExpandedState(item);
                     if ((oldState & EXPANDED_STATE_BY_SYSTEM) != 0) {
                         oldState &= ~EXPANDED_STATE_BY_SYSTEM;
@@ -1101,118 +1206,282 @@ public class RecentPanelView {
                     if ((oldState & EXPANDED_STATE_TOPTASK) != 0) {
                         oldState &= ~EXPANDED_STATE_TOPTASK;
                     }
-                    if (firstItems < mFirstExpandedItems) {
-                        //expand only if no expanded_mode_never
-                        if (mExpandedMode != EXPANDED_MODE_NEVER &&
-                                mExpandedMode != EXPANDED_MODE_DISABLED) {
+                    if (candidates.size() < mFirstExpandedItems) {
+                        // The first items keep their recents order and are expanded.
+                        // FirstExpandedItems value forces to show always the app
+                        // screenshot if the user has set expanded mode to auto or
+                        // always. Show them now, only the rest waits for the ranking.
+                        if (allowExpand) {
                             oldState |= EXPANDED_STATE_BY_SYSTEM;
                         }
                         item.setExpandedState(oldState);
-                        // The first tasks are always added to the task list.
                         addCard(item, false);
+                        committed++;
                     } else {
-                        if (mExpandedMode == EXPANDED_MODE_ALWAYS) {
-                            oldState |= EXPANDED_STATE_BY_SYSTEM;
-                        }
                         item.setExpandedState(oldState);
-                        // Favorite tasks are added next. Media playing and non favorite
-                        // we hold for a short time in an extra list.
+                        // Favorites are always shown. Others may be pushed out by them.
                         if (item.getIsFavorite()) {
-                            addCard(item, false);
-                        } else if (item.isMediaPlayingTask()) {
-                            item.setisMediaPlayingTask(true);
-                            mediaPlayingTasks.add(item);
-                        } else {
-                            nonFavoriteTasks.add(item);
+                            committed++;
                         }
                     }
-                    firstItems++;
+                    candidates.add(item);
                 }
             }
 
-            // Add now the media playing tasks to the final task list.
-            for (TaskDescription item : mediaPlayingTasks) {
-                if (mCounter >= mMaxAppsToLoad) {
-                    break;
-                }
-                if (isCancelled() || isCancelledByUser()) {
-                    mIsLoading = false;
-                    return false;
-                }
-                addCard(item, false);
+            cancelResolving(resolvedTasks);
+
+            // Adapt the slack for the next load to what we skipped this time.
+            mRecentTasksSlack = Math.max(RECENT_TASKS_MIN_SLACK,
+                    Math.min(skippedTasks, RECENT_TASKS_MAX_SLACK));
+
+            if (isStale()) {
+                return false;
             }
-            // Add now the non favorite tasks to the final task list.
-            for (TaskDescription item : nonFavoriteTasks) {
+
+            // Let the ranker decide the order of the rest and which cards are expanded.
+            final int published = Math.min(mFirstExpandedItems, candidates.size());
+            final int expandedItems = mTaskRanker.rank(candidates, mFirstExpandedItems);
+            for (int i = published; i < candidates.size(); i++) {
                 if (mCounter >= mMaxAppsToLoad) {
                     break;
                 }
-                if (isCancelled() || isCancelledByUser()) {
-                    mIsLoading = false;
+                if (isStale()) {
                     return false;
                 }
+                final TaskDescription item = candidates.get(i);
+                if ((i < expandedItems && allowExpand)
+                        || mExpandedMode == EXPANDED_MODE_ALWAYS) {
+                    item.setExpandedState(item.getExpandedState() | EXPANDED_STATE_BY_SYSTEM);
+                }
                 addCard(item, false);
             }
 
             return true;
         }
 
+        /**
+         * Append the tasks of a larger batch we do not have yet. The list may have
+         * changed meanwhile, so we keep what we have as prefix and match by
+         * persistent id. This way every queued resolve still belongs to its index.
+         */
+        private void appendNewTasks(ArrayList<ActivityManager.RecentTaskInfo> recentTasks,
+                List<ActivityManager.RecentTaskInfo> batch) {
+            final SparseBooleanArray known = new SparseBooleanArray(recentTasks.size());
+            for (ActivityManager.RecentTaskInfo recentInfo : recentTasks) {
+                known.put(recentInfo.persistentId, true);
+            }
+            for (ActivityManager.RecentTaskInfo recentInfo : batch) {
+                if (!known.get(recentInfo.persistentId)) {
+                    recentTasks.add(recentInfo);
+                }
+            }
+        }
+
+        /**
+         * Queue all tasks of the list we did not queue yet for resolving.
+         */
+        private void resolveTasks(List<ActivityManager.RecentTaskInfo> recentTasks,
+                ArrayList<Future<TaskDescription>> resolvedTasks) {
+            for (int i = resolvedTasks.size(); i < recentTasks.size(); i++) {
+                final ActivityManager.RecentTaskInfo recentInfo = recentTasks.get(i);
+                resolvedTasks.add(sResolverExecutor.submit(() -> resolveTask(recentInfo)));
+            }
+        }
+
+        private TaskDescription resolveTask(ActivityManager.RecentTaskInfo recentInfo) {
+            // A task which was not active since the last load did not change.
+            // The old one belongs to a shown card, so we work on a copy.
+            final RecentCard oldCard = mOldCards.get(recentInfo.persistentId);
+            if (oldCard != null && oldCard.task.lastActiveTime == recentInfo.lastActiveTime) {
+                return new TaskDescription(oldCard.task);
+            }
+            final TaskDescription task = createTaskDescription(
+                    recentInfo.id, recentInfo.persistentId, recentInfo.baseIntent,
+                    recentInfo.origActivity, recentInfo.description,
+                    false, EXPANDED_STATE_UNKNOWN, recentInfo.taskDescription);
+            if (task != null) {
+                task.lastActiveTime = recentInfo.lastActiveTime;
+            }
+            return task;
+        }
+
+        private TaskDescription getResolvedTask(Future<TaskDescription> future) {
+            try {
+                return future.get();
+            } catch (InterruptedException | ExecutionException e) {
+                Log.w(TAG, "Failed to resolve task", e);
+                return null;
+            }
+        }
+
+        private void cancelResolving(ArrayList<Future<TaskDescription>> resolvedTasks) {
+            for (Future<TaskDescription> future : resolvedTasks) {
+                future.cancel(false);
+            }
+        }
+
         private void addCard(final TaskDescription task, boolean topTask) {
+            final RecentCard oldCard = mOldCards.get(task.persistentTaskId);
+            final CardUpdate update;
+            if (oldCard == null) {
+                update = new CardUpdate(newCard(task), null, topTask);
+            } else {
+                update = new CardUpdate(oldCard, task, topTask);
+                update.title = getCardTitle(task);
+                // Measuring is expensive, reuse the old one if the title is the same.
+                final CharSequence oldName = oldCard.precomputedName;
+                update.precomputedName = TextUtils.equals(oldName, update.title)
+                        ? oldName : mCardAdapter.precomputeTitle(update.title);
+            }
+
+            mCounter++;
+            mLoadedCards.add(update.card);
+            publishProgress(update);
+        }
+
+        // The card is not shown yet, so we can set it up here.
+        private RecentCard newCard(final TaskDescription task) {
             final RecentCard card = new RecentCard(task);
 
             //Set card title
-            card.appName = getCardTitle(task, card);
+            card.appName = getCardTitle(task);
+            card.packageName = getCardPackageName(task);
+            card.precomputedName = mCardAdapter.precomputeTitle(card.appName);
+
+            loadIcon(card);
+
+            // Set card color
+            card.cardBackgroundColor = getCardBackgroundColor(task);
+
+            //Set corner radius
+            card.cornerRadius = mCornerRadius;
+            return card;
+        }
+
+        // Bring a card of the last load up to date and rebind only what changed.
+        // Runs on the main thread.
+        private void applyUpdate(CardUpdate update) {
+            final RecentCard card = update.card;
+            final TaskDescription task = update.task;
+            int changes = 0;
+            if (card.task.lastActiveTime != task.lastActiveTime) {
+                // The task was active meanwhile.
+                card.screenshotStale = true;
+                changes = ExpandableCardAdapter.CHANGE_ALL;
+            } else if (card.favorite != task.getIsFavorite()) {
+                changes |= ExpandableCardAdapter.CHANGE_FAVORITE;
+            }
+            final boolean expanded = card.expanded;
+            final boolean pinAppIcon = card.pinAppIcon;
+            final boolean noIcon = card.noIcon;
+            final String oldTitle = card.appName;
+            card.setTask(task);
+            if (pinAppIcon != card.pinAppIcon || noIcon != card.noIcon) {
+                changes |= ExpandableCardAdapter.CHANGE_ALL;
+            } else if (expanded != card.expanded) {
+                changes |= ExpandableCardAdapter.CHANGE_EXPANDED;
+            }
 
+            // setTask reset the title and package to the ones of the app.
+            card.packageName = getCardPackageName(task);
+            if (!update.title.equals(oldTitle)
+                    || card.precomputedName != update.precomputedName) {
+                changes |= ExpandableCardAdapter.CHANGE_TITLE;
+            }
+            card.appName = update.title;
+            card.precomputedName = update.precomputedName;
+
+            if (card.appIcon == null || card.mediaIcon || task.isMediaPlayingTask()
+                    || changes == ExpandableCardAdapter.CHANGE_ALL) {
+                loadIcon(card);
+            }
+
+            final int color = getCardBackgroundColor(task);
+            if (color != card.cardBackgroundColor) {
+                card.cardBackgroundColor = color;
+                changes |= ExpandableCardAdapter.CHANGE_COLOR;
+            }
+            if (card.cornerRadius != mCornerRadius) {
+                card.cornerRadius = mCornerRadius;
+                changes |= ExpandableCardAdapter.CHANGE_ALL;
+            }
+
+            if (changes != 0) {
+                mUpdateDispatcher.change(card, changes);
+            }
+        }
+
+        private void loadIcon(final RecentCard card) {
+            final TaskDescription task = card.task;
+            card.mediaIcon = task.isMediaPlayingTask();
             final Drawable appIcon =
                     CacheController.getInstance(mContext, /*mClearThumbOnEviction*/null)
                     .getBitmapFromMemCache(task.identifier);
             if (appIcon != null) {
                 card.appIcon = getCardIcon(task, appIcon, card);
-                postnotifyItemChanged(mCardRecyclerView, card);
+                // The texture may have been dropped since the last time.
+                AppIconLoader.prepareToDraw(card.appIcon);
+                mUpdateDispatcher.change(card, ExpandableCardAdapter.CHANGE_ICON);
             } else {
                 AppIconLoader.getInstance(mContext).loadAppIcon(task.info,
                         task.identifier, new AppIconLoader.IconCallback() {
                             @Override
                             public void onDrawableLoaded(Drawable drawable) {
                                 card.appIcon = getCardIcon(task, drawable, card);
-                                postnotifyItemChanged(mCardRecyclerView, card);
+                                mUpdateDispatcher.change(card,
+                                        ExpandableCardAdapter.CHANGE_ICON);
                             }
                 }, mIconsHandler);
             }
-            // skip thumbs loading process if fast mode enabled
-            if (mExpandedMode != EXPANDED_MODE_DISABLED && !topTask) {
-                new BitmapDownloaderTask(mContext,
-                        new DownloaderCallback() {
-                    @Override
-                    public void onBitmapLoaded(Bitmap bitmap) {
-                        card.screenshot = bitmap;
-                        postnotifyItemChanged(mCardRecyclerView, card);
-                    }
-                }).executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR,
-                        task.persistentTaskId);
+        }
+
+        private void loadScreenshot(final RecentCard card) {
+            if (mExpandedMode == EXPANDED_MODE_DISABLED) {
+                return;
+            }
+            if (!card.screenshotStale && card.screenshot != null) {
+                // Still up to date from the last load.
+                return;
             }
-            card.cardClickListener = new View.OnClickListener() {
+            card.screenshotStale = false;
+            new BitmapDownloaderTask(mContext,
+                    new DownloaderCallback() {
                 @Override
-                public void onClick(View v) {
-                    startApplication(task);
+                public void onBitmapLoaded(Bitmap bitmap) {
+                    card.screenshot = bitmap;
+                    mUpdateDispatcher.change(card, ExpandableCardAdapter.CHANGE_SCREENSHOT);
                 }
-            };
-
-            // Set card color
-            card.cardBackgroundColor = getCardBackgroundColor(task);
-
-            //Set corner radius
-            card.cornerRadius = mCornerRadius;
-
-            mCounter++;
-            publishProgress(card);
+            }).executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR,
+                    card.task.persistentTaskId);
         }
 
         @Override
-        protected void onProgressUpdate(RecentCard... card) {
-            mCardAdapter.addCard(card[0]);
+        protected void onProgressUpdate(CardUpdate... updates) {
+            if (isStale()) {
+                // Drop results of an outdated load.
+                return;
+            }
+            final CardUpdate update = updates[0];
+            final RecentCard card = update.card;
+            if (update.task != null) {
+                applyUpdate(update);
+            }
+            if (update.topTask) {
+                mFirstTask = card.task;
+            } else if (card.expanded) {
+                loadScreenshot(card);
+            } else {
+                // Screenshots of collapsed cards are only needed later. Queue them
+                // after the ones the user sees first.
+                mCollapsedCards.add(card);
+            }
+            if (!mDiffMode && update.task == null) {
+                mUpdateDispatcher.insert(card);
+            }
             // we have at least one task and card, so can show the panel while we
-            // load more tasks and cards
-            if (mCounter == 1) {
+            // load more tasks and cards. A diff load changes the list only in
+            // onPostExecute, so it would show the last list until then.
+            if (mCounter == 1 && !mDiffMode) {
                 setVisibility();
                 taskLoaded();
             }
@@ -1223,14 +1492,20 @@ public class RecentPanelView {
             // If cancelled by system, log it and set task size
             // to the only visible tasks we have till now to keep task
             // removing alive. This should never happen. Just in case.
-            if (!loaded) {
+            if (!loaded || isStale()) {
                 Log.v(TAG, "card constructing was cancelled by system or user");
+                return;
             }
 
-            // Notify arrayadapter that data set has changed
-            notifyDataSetChanged(true);
+            if (mDiffMode) {
+                // Dispatch only inserts, moves and removals against the last load.
+                mCardAdapter.setCards(mLoadedCards);
+            }
+            for (RecentCard card : mCollapsedCards) {
+                loadScreenshot(card);
+            }
             // Notfiy controller that tasks are completly loaded.
-            mIsLoading = false;
+            finishLoading(mGeneration);
             // In case we don't have any recents to show, view anyway
             setVisibility();
             taskLoaded();
@@ -1238,10 +1513,31 @@ public class RecentPanelView {
         }
     }
 
+    /**
+     * A card the loader produced. Either a new card, or a card of the last load
+     * with the task and the title the loader prepared for it.
+     */
+    private static final class CardUpdate {
+        final RecentCard card;
+        // Task copy owned by the loader, null for a new card.
+        final TaskDescription task;
+        final boolean topTask;
+        String title;
+        CharSequence precomputedName;
+
+        CardUpdate(RecentCard card, TaskDescription task, boolean topTask) {
+            this.card = card;
+            this.task = task;
+            this.topTask = topTask;
+        }
+    }
+
     private List<ActivityManager.RecentTaskInfo> getAllRecentTasks() {
-        return mAm.getRecentTasks(ActivityManager.getMaxRecentTasksStatic(),
-                ActivityManager.SLIM_RECENTS);
+        return getRecentTasks(ActivityManager.getMaxRecentTasksStatic());
+    }
 
+    private List<ActivityManager.RecentTaskInfo> getRecentTasks(int maxNum) {
+        return mAm.getRecentTasks(maxNum, ActivityManager.SLIM_RECENTS);
     }
 
     private void updateCurrentQuietProfilesCache(int currentUserId) {
@@ -1263,6 +1559,10 @@ public class RecentPanelView {
         mIconsHandler = ih;
     }
 
+    public void setTaskRanker(TaskRanker ranker) {
+        mTaskRanker = ranker;
+    }
+
     /*private CacheController.EvictionCallback mClearThumbOnEviction =
             new CacheController.EvictionCallback() {
         @Override
@@ -1273,21 +1573,6 @@ public class RecentPanelView {
         }
     };*/
 
-    private void postnotifyItemChanged(final RecyclerView recyclerView,
-            RecentCard card) {
-        Handler handler = new Handler(Looper.getMainLooper());
-        handler.post(new Runnable() {
-            @Override
-            public void run() {
-                if (!recyclerView.isComputingLayout()) {
-                    mCardAdapter.notifyItemChanged(card.index);
-                } else {
-                    postnotifyItemChanged(recyclerView, card);
-                }
-            }
-        });
-    }
-
     private int getCardBackgroundColor(TaskDescription task) {
         if (mCardColor != 0x0ffffff/* &&
                 !(task != null && task.isMediaPlayingTask() && mMediaColor != -1)*/) {
@@ -1324,18 +1609,21 @@ public class RecentPanelView {
         return null;
     }
 
-    private String getCardTitle(TaskDescription task, RecentCard card) {
+    private String getCardTitle(TaskDescription task) {
         // if the app is the current media player and a song is playing
         // we set track infos as title
-        if (task != null && task.isMediaPlayingTask()) {
-            card.packageName = mMediaPackageName;
+        if (task.isMediaPlayingTask()) {
             final String info = getTrackInfo();
             if (info != null) {
                 return info;
             }
         }
         // no infos, return original app title
-        return card.appName;
+        return task.getLabel();
+    }
+
+    private String getCardPackageName(TaskDescription task) {
+        return task.isMediaPlayingTask() ? mMediaPackageName : task.packageName;
     }
 
     private String getTrackInfo() {
@@ -1379,6 +1667,7 @@ public class RecentPanelView {
         mMediaText = notificationText;
         mMediaColor = color;
         mArtWork = artwork;
+        AppIconLoader.prepareToDraw(artwork);
         // if we have already set colors or info for a card and the panel is showing,
         // update card color now
         if (mController.isShowing()) {
@@ -1400,7 +1689,9 @@ public class RecentPanelView {
                         card.appIcon = albumart;
                     }
 
-                    postnotifyItemChanged(mCardRecyclerView, card);
+                    mUpdateDispatcher.change(card, ExpandableCardAdapter.CHANGE_TITLE
+                            | ExpandableCardAdapter.CHANGE_ICON
+                            | ExpandableCardAdapter.CHANGE_COLOR);
                 }
             }
         }
@@ -1430,32 +1721,6 @@ public class RecentPanelView {
         mMaxAppsToLoad = max;
     }
 
-    /**
-     * We are holding a list of user expanded states of apps.
-     * This class describes one expanded state object.
-     */
-    private static final class TaskExpandedStates {
-        private String mIdentifier;
-        private int mExpandedState;
-
-        public TaskExpandedStates(String identifier, int expandedState) {
-            mIdentifier = identifier;
-            mExpandedState = expandedState;
-        }
-
-        public String getIdentifier() {
-            return mIdentifier;
-        }
-
-        public int getExpandedState() {
-            return mExpandedState;
-        }
-
-        public void setExpandedState(int expandedState) {
-            mExpandedState = expandedState;
-        }
-    }
-
     // Loads the actual task bitmap.
     public static Bitmap loadThumbnail(int persistentTaskId, Context context) {
         if (context == null) {
@@ -1497,12 +1762,18 @@ public class RecentPanelView {
         @Override
         protected Bitmap doInBackground(Integer... params) {
             mLoaded = false;
-            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND + 1);
+            Process.setThreadPriority(LoaderPriority.getAssetPriority());
             if (isCancelled() || rContext == null) {
                 return null;
             }
             // Load and return bitmap
-            return loadThumbnail(params[0], rContext.get());
+            final Bitmap bitmap = loadThumbnail(params[0], rContext.get());
+            if (bitmap != null) {
+                // Nothing to do for the usual hardware snapshot, but upload
+                // other configs before the card gets drawn.
+                bitmap.prepareToDraw();
+            }
+            return bitmap;
         }
 
         @Override
@@ -31,6 +31,7 @@ public final class TaskDescription {
     final CharSequence description;
     int cardColor = 0;
     final String componentName;
+    long lastActiveTime; // to detect if the task changed since the last load
 
     private String mLabel; // application package label
     private int mExpandedState;
@@ -69,6 +70,28 @@ public final class TaskDescription {
         identifier = null;
     }
 
+    /**
+     * Copy of the task, e.g. to prepare changes of a shown task in background.
+     */
+    public TaskDescription(TaskDescription task) {
+        info = task.info;
+        intent = task.intent;
+        taskId = task.taskId;
+        persistentTaskId = task.persistentTaskId;
+
+        description = task.description;
+        packageName = task.packageName;
+        componentName = task.componentName;
+        identifier = task.identifier;
+
+        cardColor = task.cardColor;
+        lastActiveTime = task.lastActiveTime;
+        mLabel = task.mLabel;
+        mExpandedState = task.mExpandedState;
+        mIsFavorite = task.mIsFavorite;
+        mPlaying = task.mPlaying;
+    }
+
     public String getLabel() {
         return mLabel;
     }
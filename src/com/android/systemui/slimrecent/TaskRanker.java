@@ -0,0 +1,46 @@
+/*
+ * Copyright (C) 2026 Android Ice Cold Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.systemui.slimrecent;
+
+import java.util.List;
+
+/**
+ * Ranking stage of the card loader. Decides in which order the
+ * tasks are shown and which of them are expanded by the system,
+ * so screenshots are loaded first for the tasks the user is likely
+ * to pick.
+ *
+ * Called on the card loader thread.
+ */
+public interface TaskRanker {
+
+    /**
+     * Sort the tasks into the order we show them. The first firstExpandedItems
+     * tasks are already shown by the loader and must keep their place.
+     *
+     * @param tasks the tasks without the top task in recents order.
+     *              Favorite and media playing flags are already set.
+     * @param firstExpandedItems how many apps the user wants to see expanded
+     * @return how many of the first sorted tasks should be expanded
+     */
+    int rank(List<TaskDescription> tasks, int firstExpandedItems);
+
+    /**
+     * The user launched the task from recents.
+     */
+    void onTaskLaunched(TaskDescription task);
+}
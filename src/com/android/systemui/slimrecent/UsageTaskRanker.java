@@ -0,0 +1,185 @@
+/*
+ * Copyright (C) 2026 Android Ice Cold Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.systemui.slimrecent;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.LruCache;
+
+import com.android.internal.os.BackgroundThread;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Default task ranker.
+ *
+ * The first most recent apps keep their recents order, they are shown
+ * and expanded before the rest is ranked. The other tasks are put into
+ * tiers: favorites, media playing apps and the rest. Inside a tier
+ * recency and how often the user launched the app from recents decide.
+ *
+ * Launch counts are kept in device protected preferences to survive
+ * SystemUI restarts. They are read on the background thread or on the
+ * first use by the card loader, whichever comes first.
+ */
+public class UsageTaskRanker implements TaskRanker {
+
+    private static final String PREFS_NAME = "slim_recents_launch_counts";
+
+    private static final int TIER_FAVORITE    = 2;
+    private static final int TIER_MEDIA       = 1;
+    private static final int TIER_OTHER       = 0;
+
+    // Weights inside a tier. Together they stay below 1, so tiers never mix.
+    private static final float WEIGHT_RECENCY   = 0.6f;
+    private static final float WEIGHT_FREQUENCY = 0.3f;
+
+    private static final int MAX_TRACKED_APPS = 50;
+
+    // Null if the counts are only kept in memory.
+    private final SharedPreferences mPrefs;
+
+    // Launch counts keyed by task identifier.
+    private final LruCache<String, Integer> mLaunchCounts;
+
+    // Guarded by mLaunchCounts.
+    private boolean mLoaded;
+
+    public UsageTaskRanker(Context context) {
+        this(context.createDeviceProtectedStorageContext()
+                .getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE));
+        BackgroundThread.getHandler().post(new Runnable() {
+            @Override
+            public void run() {
+                ensureLoaded();
+            }
+        });
+    }
+
+    UsageTaskRanker(SharedPreferences prefs) {
+        mPrefs = prefs;
+        mLaunchCounts = new LruCache<String, Integer>(MAX_TRACKED_APPS) {
+            @Override
+            protected void entryRemoved(boolean evicted, String key,
+                    Integer oldCount, Integer newCount) {
+                if (evicted && mPrefs != null) {
+                    mPrefs.edit().remove(key).apply();
+                }
+            }
+        };
+    }
+
+    @Override
+    public int rank(List<TaskDescription> tasks, int firstExpandedItems) {
+        final int size = tasks.size();
+        final int first = Math.max(0, Math.min(firstExpandedItems, size));
+        if (size - first < 2) {
+            return first;
+        }
+        ensureLoaded();
+
+        // Only the tasks after the first items are ranked.
+        final int count = size - first;
+        int maxLaunches = 1;
+        final int[] launches = new int[count];
+        for (int i = 0; i < count; i++) {
+            launches[i] = getLaunchCount(tasks.get(first + i));
+            maxLaunches = Math.max(maxLaunches, launches[i]);
+        }
+
+        final ArrayList<RankedTask> ranked = new ArrayList<RankedTask>(count);
+        for (int i = 0; i < count; i++) {
+            final TaskDescription task = tasks.get(first + i);
+            final float recency = 1f - (float) i / count;
+            final float frequency = (float) launches[i] / maxLaunches;
+            final float score = getTier(task)
+                    + WEIGHT_RECENCY * recency + WEIGHT_FREQUENCY * frequency;
+            ranked.add(new RankedTask(task, score, i));
+        }
+        Collections.sort(ranked, (a, b) -> {
+            final int result = Float.compare(b.score, a.score);
+            return result != 0 ? result : Integer.compare(a.position, b.position);
+        });
+
+        for (int i = 0; i < count; i++) {
+            tasks.set(first + i, ranked.get(i).task);
+        }
+        return first;
+    }
+
+    @Override
+    public void onTaskLaunched(TaskDescription task) {
+        if (task == null || task.identifier == null) {
+            return;
+        }
+        ensureLoaded();
+        final int count;
+        synchronized (mLaunchCounts) {
+            count = getLaunchCount(task) + 1;
+            mLaunchCounts.put(task.identifier, count);
+        }
+        if (mPrefs != null) {
+            mPrefs.edit().putInt(task.identifier, count).apply();
+        }
+    }
+
+    int getLaunchCount(TaskDescription task) {
+        final Integer count = task.identifier != null ? mLaunchCounts.get(task.identifier) : null;
+        return count != null ? count : 0;
+    }
+
+    private void ensureLoaded() {
+        synchronized (mLaunchCounts) {
+            if (mLoaded) {
+                return;
+            }
+            mLoaded = true;
+            if (mPrefs == null) {
+                return;
+            }
+            for (Map.Entry<String, ?> entry : mPrefs.getAll().entrySet()) {
+                if (entry.getValue() instanceof Integer) {
+                    mLaunchCounts.put(entry.getKey(), (Integer) entry.getValue());
+                }
+            }
+        }
+    }
+
+    private static int getTier(TaskDescription task) {
+        if (task.getIsFavorite()) {
+            return TIER_FAVORITE;
+        } else if (task.isMediaPlayingTask()) {
+            return TIER_MEDIA;
+        }
+        return TIER_OTHER;
+    }
+
+    private static final class RankedTask {
+        final TaskDescription task;
+        final float score;
+        final int position;
+
+        RankedTask(TaskDescription task, float score, int position) {
+            this.task = task;
+            this.score = score;
+            this.position = position;
+        }
+    }
+}
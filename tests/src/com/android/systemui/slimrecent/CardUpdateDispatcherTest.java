@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2026 Android Ice Cold Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.systemui.slimrecent;
+
+import static com.android.systemui.slimrecent.CardUpdateDispatcher.MAX_UPDATES_PER_FRAME;
+
+import static org.junit.Assert.assertEquals;
+
+import android.content.Context;
+import android.view.Choreographer;
+
+import androidx.recyclerview.widget.RecyclerView;
+import androidx.test.filters.SmallTest;
+import androidx.test.platform.app.InstrumentationRegistry;
+import androidx.test.runner.AndroidJUnit4;
+
+import com.android.systemui.slimrecent.ExpandableCardAdapter.ExpandableCard;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+@SmallTest
+@RunWith(AndroidJUnit4.class)
+public class CardUpdateDispatcherTest {
+
+    private final ArrayList<Choreographer.FrameCallback> mFrames = new ArrayList<>();
+    // Notified changes as {position, payload}.
+    private final ArrayList<int[]> mChanges = new ArrayList<>();
+    private int mInserted;
+
+    private ExpandableCardAdapter mAdapter;
+    private CardUpdateDispatcher mDispatcher;
+
+    @Before
+    public void setUp() {
+        final Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        mAdapter = new ExpandableCardAdapter(context, false);
+        mAdapter.registerAdapterDataObserver(new RecyclerView.AdapterDataObserver() {
+            @Override
+            public void onItemRangeInserted(int positionStart, int itemCount) {
+                mInserted += itemCount;
+            }
+
+            @Override
+            public void onItemRangeChanged(int positionStart, int itemCount, Object payload) {
+                for (int i = 0; i < itemCount; i++) {
+                    mChanges.add(new int[] { positionStart + i, (Integer) payload });
+                }
+            }
+        });
+        mDispatcher = new CardUpdateDispatcher(new RecyclerView(context), mFrames::add);
+        mDispatcher.setAdapter(mAdapter);
+    }
+
+    @Test
+    public void testChangesOfOneCardAreCoalesced() {
+        final List<ExpandableCard> cards = cards(2);
+        mAdapter.addCards(cards);
+
+        mDispatcher.change(cards.get(1), ExpandableCardAdapter.CHANGE_ICON);
+        mDispatcher.change(cards.get(1), ExpandableCardAdapter.CHANGE_SCREENSHOT);
+        mDispatcher.change(cards.get(1), ExpandableCardAdapter.CHANGE_ICON);
+        assertEquals(1, mFrames.size());
+
+        runFrame();
+
+        assertEquals(1, mChanges.size());
+        assertEquals(1, mChanges.get(0)[0]);
+        assertEquals(ExpandableCardAdapter.CHANGE_ICON | ExpandableCardAdapter.CHANGE_SCREENSHOT,
+                mChanges.get(0)[1]);
+        assertEquals(0, mFrames.size());
+    }
+
+    @Test
+    public void testInsertsAreSpreadOverFrames() {
+        final int count = MAX_UPDATES_PER_FRAME + 2;
+        for (ExpandableCard card : cards(count)) {
+            mDispatcher.insert(card);
+        }
+        assertEquals(1, mFrames.size());
+
+        runFrame();
+        assertEquals(MAX_UPDATES_PER_FRAME, mInserted);
+        assertEquals(2, mDispatcher.getPendingInsertCount());
+        assertEquals(1, mFrames.size());
+
+        runFrame();
+        assertEquals(count, mInserted);
+        assertEquals(0, mFrames.size());
+    }
+
+    @Test
+    public void testChangeOfPendingInsertIsDropped() {
+        final ExpandableCard card = cards(1).get(0);
+        mDispatcher.insert(card);
+        mDispatcher.change(card, ExpandableCardAdapter.CHANGE_ICON);
+
+        runFrame();
+
+        assertEquals(1, mInserted);
+        assertEquals(0, mChanges.size());
+    }
+
+    @Test
+    public void testInsertsAndChangesShareTheBudget() {
+        final List<ExpandableCard> cards = cards(MAX_UPDATES_PER_FRAME);
+        mAdapter.addCards(cards);
+        mInserted = 0;
+
+        mDispatcher.insert(cards(1).get(0));
+        for (ExpandableCard card : cards) {
+            mDispatcher.change(card, ExpandableCardAdapter.CHANGE_COLOR);
+        }
+        assertEquals(1, mFrames.size());
+
+        runFrame();
+        assertEquals(1, mInserted);
+        assertEquals(MAX_UPDATES_PER_FRAME - 1, mChanges.size());
+        assertEquals(1, mFrames.size());
+
+        runFrame();
+        assertEquals(MAX_UPDATES_PER_FRAME, mChanges.size());
+        assertEquals(0, mFrames.size());
+    }
+
+    private void runFrame() {
+        final Choreographer.FrameCallback frame = mFrames.remove(0);
+        frame.doFrame(System.nanoTime());
+    }
+
+    private static List<ExpandableCard> cards(int count) {
+        final ExpandableCard[] cards = new ExpandableCard[count];
+        for (int i = 0; i < count; i++) {
+            cards[i] = new ExpandableCard("card" + i, null);
+        }
+        return Arrays.asList(cards);
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2026 Android Ice Cold Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.systemui.slimrecent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.app.Instrumentation;
+import android.content.Context;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.View;
+import android.view.ViewGroup;
+
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+import androidx.test.filters.SmallTest;
+import androidx.test.platform.app.InstrumentationRegistry;
+import androidx.test.runner.AndroidJUnit4;
+
+import com.android.systemui.slimrecent.ExpandableCardAdapter.ExpandableCard;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+
+@SmallTest
+@RunWith(AndroidJUnit4.class)
+public class CardViewPoolTest {
+
+    private final static String TAG = "RecentCardViewPoolTest";
+
+    // More cards than fit on any screen.
+    private static final int CARDS = 40;
+    private static final long WARM_UP_TIMEOUT_MS = 5000;
+
+    private Instrumentation mInstrumentation;
+    private Context mContext;
+
+    private RecyclerView mRecyclerView;
+    private CardViewPool mPool;
+    private CountingAdapter mAdapter;
+
+    @Before
+    public void setUp() {
+        mInstrumentation = InstrumentationRegistry.getInstrumentation();
+        mContext = mInstrumentation.getTargetContext();
+        mInstrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mRecyclerView = new RecyclerView(mContext);
+                mRecyclerView.setLayoutManager(new LinearLayoutManager(mContext));
+                mPool = new CardViewPool(mContext.getResources());
+                mRecyclerView.setRecycledViewPool(mPool);
+                mAdapter = new CountingAdapter(mContext);
+                final ArrayList<ExpandableCard> cards = new ArrayList<>();
+                for (int i = 0; i < CARDS; i++) {
+                    cards.add(new ExpandableCard("app" + i, null));
+                }
+                mAdapter.addCards(cards);
+                mRecyclerView.setAdapter(mAdapter);
+            }
+        });
+    }
+
+    @Test
+    public void testWarmUpSavesMainThreadInflations() {
+        final int cold = firstOpenInflations(false);
+        setUp();
+        final int warm = firstOpenInflations(true);
+        Log.i(TAG, "main thread card inflations on first open: " + cold
+                + " cold, " + warm + " after warm up of " + mPool.getCardCount());
+
+        assertTrue(cold > 0);
+        assertEquals(Math.max(0, cold - mPool.getCardCount()), warm);
+    }
+
+    // Lay out a screen full of cards like the first panel open does and
+    // return the cards inflated on the main thread for it.
+    private int firstOpenInflations(boolean warmUp) {
+        if (warmUp) {
+            mInstrumentation.runOnMainSync(new Runnable() {
+                @Override
+                public void run() {
+                    mPool.warmUp(mAdapter, mRecyclerView);
+                }
+            });
+            waitForWarmUp();
+        }
+        mInstrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                final int width = mContext.getResources().getDisplayMetrics().widthPixels;
+                final int height = mContext.getResources().getDisplayMetrics().heightPixels;
+                mRecyclerView.measure(
+                        View.MeasureSpec.makeMeasureSpec(width, View.MeasureSpec.EXACTLY),
+                        View.MeasureSpec.makeMeasureSpec(height, View.MeasureSpec.EXACTLY));
+                mRecyclerView.layout(0, 0, width, height);
+            }
+        });
+        return mAdapter.mMainThreadInflations;
+    }
+
+    private void waitForWarmUp() {
+        final long end = SystemClock.uptimeMillis() + WARM_UP_TIMEOUT_MS;
+        final int[] pooled = new int[1];
+        do {
+            SystemClock.sleep(10);
+            mInstrumentation.runOnMainSync(new Runnable() {
+                @Override
+                public void run() {
+                    pooled[0] = mPool.getRecycledViewCount(0);
+                }
+            });
+        } while (pooled[0] < mPool.getCardCount() && SystemClock.uptimeMillis() < end);
+        assertEquals(mPool.getCardCount(), pooled[0]);
+    }
+
+    private static class CountingAdapter extends ExpandableCardAdapter {
+        int mMainThreadInflations;
+
+        CountingAdapter(Context context) {
+            super(context, false);
+        }
+
+        @Override
+        public ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+            if (Looper.myLooper() == Looper.getMainLooper()) {
+                mMainThreadInflations++;
+            }
+            return super.onCreateViewHolder(parent, viewType);
+        }
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2026 Android Ice Cold Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.systemui.slimrecent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assume.assumeTrue;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.ColorDrawable;
+import android.graphics.drawable.Drawable;
+import android.view.View;
+
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+import androidx.test.filters.SmallTest;
+import androidx.test.platform.app.InstrumentationRegistry;
+import androidx.test.runner.AndroidJUnit4;
+
+import com.android.systemui.slimrecent.ExpandableCardAdapter.ExpandableCard;
+import com.android.systemui.slimrecent.ExpandableCardAdapter.ViewHolder;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Collections;
+
+@SmallTest
+@RunWith(AndroidJUnit4.class)
+public class ExpandableCardAdapterTest {
+
+    private final Drawable mOldIcon = new ColorDrawable(Color.RED);
+    private final Drawable mNewIcon = new ColorDrawable(Color.GREEN);
+    private final Bitmap mOldScreenshot = Bitmap.createBitmap(10, 20, Bitmap.Config.ARGB_8888);
+    private final Bitmap mNewScreenshot = Bitmap.createBitmap(10, 20, Bitmap.Config.ARGB_8888);
+
+    private ExpandableCardAdapter mAdapter;
+    private ExpandableCard mCard;
+    private ViewHolder mHolder;
+
+    // Bound state of the old card.
+    private CharSequence mTitle;
+    private int mTextColor;
+    private int mTint;
+    private int mFavoriteVisibility;
+    private Drawable mExpandDrawable;
+    private int mExpandVisibility;
+
+    @Before
+    public void setUp() {
+        final Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        final RecyclerView parent = new RecyclerView(context);
+        parent.setLayoutManager(new LinearLayoutManager(context));
+        mAdapter = new ExpandableCardAdapter(context, false);
+
+        mCard = new ExpandableCard("old", mOldIcon);
+        mCard.cardBackgroundColor = Color.BLACK;
+        mCard.screenshot = mOldScreenshot;
+        mAdapter.addCard(mCard);
+
+        mHolder = mAdapter.createViewHolder(parent, 0);
+        // The flat card header draws everything in one view, there is
+        // nothing to tell apart.
+        assumeTrue(mHolder.header == null);
+        mAdapter.onBindViewHolder(mHolder, 0);
+        layout();
+
+        mTitle = mHolder.appName.getText();
+        mTextColor = mHolder.appName.getCurrentTextColor();
+        mTint = mHolder.card.getBackgroundTintList().getDefaultColor();
+        mFavoriteVisibility = mHolder.favorite.getVisibility();
+        mExpandDrawable = mHolder.expandButton.getDrawable();
+        mExpandVisibility = mHolder.expandButton.getVisibility();
+
+        // Change everything but the expanded state, which alone is
+        // allowed to move views.
+        mCard.appName = "new";
+        mCard.appIcon = mNewIcon;
+        mCard.cardBackgroundColor = Color.WHITE;
+        mCard.favorite = true;
+        mCard.screenshot = mNewScreenshot;
+        mCard.pinAppIcon = true;
+    }
+
+    @Test
+    public void testIconChangeBindsOnlyIcon() {
+        bind(ExpandableCardAdapter.CHANGE_ICON);
+
+        assertSame(mNewIcon, mHolder.appIcon.getDrawable());
+        assertSame(mOldScreenshot, getScreenshot());
+        assertHeaderUnchanged();
+        assertFalse(mHolder.itemView.isLayoutRequested());
+    }
+
+    @Test
+    public void testScreenshotChangeBindsOnlyScreenshot() {
+        bind(ExpandableCardAdapter.CHANGE_SCREENSHOT);
+
+        assertSame(mNewScreenshot, getScreenshot());
+        assertSame(mOldIcon, mHolder.appIcon.getDrawable());
+        assertHeaderUnchanged();
+        assertFalse(mHolder.itemView.isLayoutRequested());
+    }
+
+    @Test
+    public void testTitleChangeBindsOnlyTitle() {
+        bind(ExpandableCardAdapter.CHANGE_TITLE);
+
+        assertEquals("new", mHolder.appName.getText().toString());
+        assertEquals(mTextColor, mHolder.appName.getCurrentTextColor());
+        assertEquals(mTint, mHolder.card.getBackgroundTintList().getDefaultColor());
+        assertEquals(mFavoriteVisibility, mHolder.favorite.getVisibility());
+        assertSame(mOldIcon, mHolder.appIcon.getDrawable());
+        assertSame(mOldScreenshot, getScreenshot());
+    }
+
+    private void assertHeaderUnchanged() {
+        assertEquals(mTitle.toString(), mHolder.appName.getText().toString());
+        assertEquals(mTextColor, mHolder.appName.getCurrentTextColor());
+        assertEquals(mTint, mHolder.card.getBackgroundTintList().getDefaultColor());
+        assertEquals(mFavoriteVisibility, mHolder.favorite.getVisibility());
+        assertSame(mExpandDrawable, mHolder.expandButton.getDrawable());
+        assertEquals(mExpandVisibility, mHolder.expandButton.getVisibility());
+    }
+
+    private void bind(int changes) {
+        mAdapter.onBindViewHolder(mHolder, 0, Collections.singletonList((Object) changes));
+    }
+
+    private Bitmap getScreenshot() {
+        return ((BitmapDrawable) mHolder.screenshot.getDrawable()).getBitmap();
+    }
+
+    private void layout() {
+        final View view = mHolder.itemView;
+        view.measure(View.MeasureSpec.makeMeasureSpec(1080, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(0, View.MeasureSpec.UNSPECIFIED));
+        view.layout(0, 0, view.getMeasuredWidth(), view.getMeasuredHeight());
+    }
+}
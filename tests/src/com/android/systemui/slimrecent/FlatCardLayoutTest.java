@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2026 Android Ice Cold Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.systemui.slimrecent;
+
+import static org.junit.Assert.assertEquals;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.FrameLayout;
+
+import androidx.test.filters.SmallTest;
+import androidx.test.platform.app.InstrumentationRegistry;
+import androidx.test.runner.AndroidJUnit4;
+
+import com.android.systemui.R;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@SmallTest
+@RunWith(AndroidJUnit4.class)
+public class FlatCardLayoutTest {
+
+    private final static String TAG = "RecentFlatCardLayoutTest";
+
+    private static final int PASSES = 200;
+
+    private Context mContext;
+    private LayoutInflater mInflater;
+    private ViewGroup mParent;
+    private ExpandableCardAdapter mAdapter;
+
+    @Before
+    public void setUp() {
+        mContext = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        mInflater = LayoutInflater.from(mContext);
+        mParent = new FrameLayout(mContext);
+        mAdapter = new ExpandableCardAdapter(mContext, false);
+    }
+
+    @Test
+    public void testFlatCardHasHalfTheViews() {
+        final int views = countViews(inflate(R.layout.card));
+        final int flatViews = countViews(inflate(R.layout.card_flat));
+        Log.i(TAG, "views per card: " + views + " card, " + flatViews + " card_flat");
+
+        // The wrapping root and the header row, two containers with icon,
+        // favorite, title and expand button, are replaced by one view.
+        assertEquals(views - 6, flatViews);
+    }
+
+    // Only logs, timings are too noisy to fail on.
+    @Test
+    public void testMeasureTime() {
+        final View card = inflate(R.layout.card);
+        final View flatCard = inflate(R.layout.card_flat);
+        // Warm up both, e.g. the text layout caches.
+        measurePasses(card, PASSES);
+        measurePasses(flatCard, PASSES);
+
+        final long time = measurePasses(card, PASSES);
+        final long flatTime = measurePasses(flatCard, PASSES);
+        Log.i(TAG, "ns per measure and layout pass: " + time / PASSES + " card, "
+                + flatTime / PASSES + " card_flat");
+    }
+
+    private View inflate(int layout) {
+        final View card = mInflater.inflate(layout, mParent, false);
+        mAdapter.new ViewHolder(card).setTitle("Recent app title");
+        return card;
+    }
+
+    private static int countViews(View view) {
+        int count = 1;
+        if (view instanceof ViewGroup) {
+            final ViewGroup group = (ViewGroup) view;
+            for (int i = 0; i < group.getChildCount(); i++) {
+                count += countViews(group.getChildAt(i));
+            }
+        }
+        return count;
+    }
+
+    // Full measure and layout passes like a card gets on every rebind
+    // which changes its size. Returns the time they took in ns.
+    private long measurePasses(View card, int passes) {
+        final int width = View.MeasureSpec.makeMeasureSpec(
+                mContext.getResources().getDisplayMetrics().widthPixels,
+                View.MeasureSpec.EXACTLY);
+        final int height = View.MeasureSpec.makeMeasureSpec(0, View.MeasureSpec.UNSPECIFIED);
+        final long start = SystemClock.elapsedRealtimeNanos();
+        for (int i = 0; i < passes; i++) {
+            forceLayout(card);
+            card.measure(width, height);
+            card.layout(0, 0, card.getMeasuredWidth(), card.getMeasuredHeight());
+        }
+        return SystemClock.elapsedRealtimeNanos() - start;
+    }
+
+    private static void forceLayout(View view) {
+        view.forceLayout();
+        if (view instanceof ViewGroup) {
+            final ViewGroup group = (ViewGroup) view;
+            for (int i = 0; i < group.getChildCount(); i++) {
+                forceLayout(group.getChildAt(i));
+            }
+        }
+    }
+}
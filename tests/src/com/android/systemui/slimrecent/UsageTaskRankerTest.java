@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2026 Android Ice Cold Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.systemui.slimrecent;
+
+import static org.junit.Assert.assertEquals;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import androidx.test.filters.SmallTest;
+import androidx.test.platform.app.InstrumentationRegistry;
+import androidx.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+@SmallTest
+@RunWith(AndroidJUnit4.class)
+public class UsageTaskRankerTest {
+
+    private static final String PREFS_NAME = "slim_recents_launch_counts_test";
+
+    private SharedPreferences mPrefs;
+    private UsageTaskRanker mRanker;
+
+    @Before
+    public void setUp() {
+        mPrefs = InstrumentationRegistry.getInstrumentation().getTargetContext()
+                .getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        mPrefs.edit().clear().commit();
+        mRanker = new UsageTaskRanker(mPrefs);
+    }
+
+    @After
+    public void tearDown() {
+        mPrefs.edit().clear().commit();
+    }
+
+    @Test
+    public void testTierOrder() {
+        final TaskDescription other = task("other");
+        final TaskDescription media = task("media");
+        media.setisMediaPlayingTask(true);
+        final TaskDescription favorite = task("favorite");
+        favorite.setIsFavorite(true);
+        final List<TaskDescription> tasks = list(other, media, favorite);
+
+        mRanker.rank(tasks, 0);
+
+        assertEquals(Arrays.asList(favorite, media, other), tasks);
+    }
+
+    @Test
+    public void testFirstItemsKeepRecencyOrder() {
+        // Ranked like the rest, the favorite and the often launched app would move up.
+        final TaskDescription first = task("first");
+        final TaskDescription second = task("second");
+        launch(second, 10);
+        final TaskDescription third = task("third");
+        third.setIsFavorite(true);
+        final TaskDescription other = task("other");
+        final TaskDescription favorite = task("favorite");
+        favorite.setIsFavorite(true);
+        final List<TaskDescription> tasks = list(first, second, third, other, favorite);
+
+        assertEquals(3, mRanker.rank(tasks, 3));
+
+        assertEquals(Arrays.asList(first, second, third, favorite, other), tasks);
+    }
+
+    @Test
+    public void testFrequencyWithinTier() {
+        final TaskDescription recent = task("recent");
+        final TaskDescription frequent = task("frequent");
+        final TaskDescription oldest = task("oldest");
+        launch(frequent, 5);
+        final List<TaskDescription> tasks = list(recent, frequent, oldest);
+
+        mRanker.rank(tasks, 0);
+
+        assertEquals(Arrays.asList(frequent, recent, oldest), tasks);
+    }
+
+    @Test
+    public void testTiesKeepRecentsOrder() {
+        final TaskDescription a = task("a");
+        final TaskDescription b = task("b");
+        final TaskDescription c = task("c");
+        launch(a, 2);
+        launch(b, 2);
+        launch(c, 2);
+        final List<TaskDescription> tasks = list(a, b, c);
+
+        mRanker.rank(tasks, 0);
+
+        assertEquals(Arrays.asList(a, b, c), tasks);
+    }
+
+    @Test
+    public void testExpandedCount() {
+        assertEquals(0, mRanker.rank(new ArrayList<TaskDescription>(), 2));
+        assertEquals(1, mRanker.rank(list(task("a")), 2));
+        assertEquals(2, mRanker.rank(list(task("a"), task("b"), task("c")), 2));
+        assertEquals(0, mRanker.rank(list(task("a"), task("b")), 0));
+    }
+
+    @Test
+    public void testLaunchCountsArePersisted() {
+        final TaskDescription task = task("persisted");
+        launch(task, 3);
+
+        final UsageTaskRanker ranker = new UsageTaskRanker(mPrefs);
+
+        assertEquals(3, ranker.getLaunchCount(task));
+    }
+
+    private void launch(TaskDescription task, int times) {
+        for (int i = 0; i < times; i++) {
+            mRanker.onTaskLaunched(task);
+        }
+    }
+
+    private static List<TaskDescription> list(TaskDescription... tasks) {
+        return new ArrayList<TaskDescription>(Arrays.asList(tasks));
+    }
+
+    private static TaskDescription task(String identifier) {
+        return new TaskDescription(0, 0, null, null, identifier, identifier,
+                identifier, null, false, RecentPanelView.EXPANDED_STATE_UNKNOWN, 0);
+    }
+}